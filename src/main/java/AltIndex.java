@@ -0,0 +1,466 @@
+package main.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Goal directed point to point queries with A*, landmarks and the triangle inequality (ALT).
+ *
+ * A handful of landmark vertices is picked up front and the distances from and to every
+ * landmark are stored. For a query towards t, d(L, t) - d(L, v) and d(v, L) - d(t, L) are
+ * lower bounds on d(v, t) for every landmark L, and the largest one steers A* towards t.
+ *
+ * Everything runs on the reweighted graph. The Johnson potentials are already a feasible
+ * potential, so the reweighted costs are non-negative and the landmark bounds on top of them
+ * stay consistent; the real length is recovered from the potentials at the end, like
+ * DeltaStepping does
+ */
+public class AltIndex {
+    /* fixed so that the same graph always gets the same landmarks */
+    private static final long SEED = 0x5EED;
+    /* by default as many queries as there are processors get scratch arrays at once */
+    private static final int DEFAULT_MAX_CONCURRENT_QUERIES = Runtime.getRuntime().availableProcessors();
+    /* numbers each set of scratch arrays, so a mapped allocator gives every query its own files */
+    private static final AtomicInteger nextScratchId = new AtomicInteger();
+
+    /**
+     * How landmarks are picked
+     */
+    public enum LandmarkSelection {
+        /* each new landmark is the vertex furthest from the landmarks picked so far */
+        FARTHEST,
+        /* each new landmark is at the end of the region of a shortest path tree the current landmarks bound worst */
+        AVOID
+    }
+
+    private CsrGraph graph;
+    private int[] landmarks;
+    /* fromLandmark[i] holds the reweighted distances from landmark i to every vertex */
+    private IntArray[] fromLandmark;
+    /* toLandmark[i] holds the reweighted distances from every vertex to landmark i */
+    private IntArray[] toLandmark;
+    /* decides where the per-query scratch arrays are stored */
+    private IntArrayAllocator allocator;
+    /* scratch arrays, reused across queries */
+    private ScratchPool<Scratch> scratchPool;
+
+    private AltIndex(CsrGraph graph, int[] landmarks, IntArray[] fromLandmark, IntArray[] toLandmark,
+                     IntArrayAllocator allocator, int maxConcurrentQueries) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+        this.allocator = allocator;
+        this.scratchPool = new ScratchPool<>(maxConcurrentQueries, this::newScratch);
+    }
+
+    /**
+     * Picks landmarks and computes their distance arrays on the heap, letting as many queries
+     * run at once as there are processors
+     * @see #build(CsrGraph, int, LandmarkSelection, int, ExecutorService, int, IntArrayAllocator, int)
+     */
+    public static AltIndex build(CsrGraph graph, int numLandmarks, LandmarkSelection selection,
+                                 int delta, ExecutorService executor, int parallelism) {
+        try {
+            return build(graph, numLandmarks, selection, delta, executor, parallelism, IntArrayAllocator.heap(),
+                    DEFAULT_MAX_CONCURRENT_QUERIES);
+        } catch (IOException e) {
+            /* the heap allocator doesn't do I/O */
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Picks landmarks and computes the distances from and to each of them with delta-stepping
+     * on the graph and on its reverse
+     * @param graph the graph after Bellman-Ford reweighting
+     * @param numLandmarks number of landmarks, capped at the number of vertices. 0 turns
+     *                     queries into plain Dijkstra
+     * @param selection how landmarks are picked
+     * @param delta delta-stepping bucket width
+     * @param executor pool the delta-stepping relaxations run on
+     * @param parallelism number of tasks each delta-stepping frontier is split into
+     * @param allocator decides where the landmark distance arrays, the reverse graph and the
+     *                  delta-stepping and query scratch are stored
+     * @param maxConcurrentQueries most queries that hold scratch arrays at once, further callers wait
+     * @return the index
+     * @throws IOException thrown if the allocator couldn't map its backing file
+     */
+    public static AltIndex build(CsrGraph graph, int numLandmarks, LandmarkSelection selection,
+                                 int delta, ExecutorService executor, int parallelism,
+                                 IntArrayAllocator allocator, int maxConcurrentQueries) throws IOException {
+        int numVertices = graph.getNumVertices();
+        numLandmarks = Math.min(numLandmarks, numVertices);
+        CsrGraph reverseGraph = graph.reverse(allocator);
+        /* landmarks are computed one at a time, so one set of scratch arrays each is enough */
+        DeltaStepping forward = new DeltaStepping(graph, delta, executor, parallelism, allocator, 1);
+        DeltaStepping backward = new DeltaStepping(reverseGraph, delta, executor, parallelism, allocator, 1);
+        Random random = new Random(SEED);
+
+        int[] landmarks = new int[numLandmarks];
+        IntArray[] fromLandmark = new IntArray[numLandmarks];
+        IntArray[] toLandmark = new IntArray[numLandmarks];
+        /* for FARTHEST, the round trip distance from each vertex to its closest landmark so far */
+        long[] closestLandmark = new long[numVertices + 1];
+        Arrays.fill(closestLandmark, Long.MAX_VALUE);
+        for (int i = 0; i < numLandmarks; i++) {
+            int landmark = -1;
+            if (selection == LandmarkSelection.AVOID) {
+                landmark = avoid(graph, forward, landmarks, fromLandmark, toLandmark, i,
+                        1 + random.nextInt(numVertices));
+            }
+            if (landmark == -1) {
+                landmark = farthest(graph, forward, closestLandmark, i, 1 + random.nextInt(numVertices));
+            }
+            landmarks[i] = landmark;
+            /* delta-stepping writes straight into the allocator's arrays, never into heap copies */
+            fromLandmark[i] = allocator.allocate("landmark-from-" + i, numVertices + 1);
+            toLandmark[i] = allocator.allocate("landmark-to-" + i, numVertices + 1);
+            forward.calculateReweightedShortestPaths(landmark, fromLandmark[i]);
+            backward.calculateReweightedShortestPaths(landmark, toLandmark[i]);
+            for (int v = 1; v <= numVertices; v++) {
+                closestLandmark[v] = Math.min(closestLandmark[v],
+                        roundTrip(fromLandmark[i].get(v), toLandmark[i].get(v)));
+            }
+        }
+        /* only the landmark distances outlive the build */
+        forward.free();
+        backward.free();
+        reverseGraph.free();
+        return new AltIndex(graph, landmarks, fromLandmark, toLandmark, allocator, maxConcurrentQueries);
+    }
+
+    /**
+     * Picks the vertex whose round trip to its closest landmark is longest. Only when every
+     * vertex with a round trip is taken does it move on to a vertex without one, preferring
+     * vertices that have outbound edges. The first landmark is the vertex furthest from a random root
+     */
+    private static int farthest(CsrGraph graph, DeltaStepping forward, long[] closestLandmark,
+                                int numPicked, int root) {
+        int best = root;
+        if (numPicked == 0) {
+            int[] fromRoot = forward.calculateReweightedShortestPaths(root);
+            for (int v = 1; v < fromRoot.length; v++) {
+                if (fromRoot[v] != Integer.MAX_VALUE && fromRoot[v] > fromRoot[best]) {
+                    best = v;
+                }
+            }
+            return best;
+        }
+        int unconnected = -1;
+        best = -1;
+        for (int v = 1; v < closestLandmark.length; v++) {
+            if (closestLandmark[v] == Long.MAX_VALUE) {
+                if (unconnected == -1 || graph.edgesBegin(unconnected) == graph.edgesEnd(unconnected)) {
+                    unconnected = v;
+                }
+            } else if (closestLandmark[v] > 0 && (best == -1 || closestLandmark[v] > closestLandmark[best])) {
+                best = v;
+            }
+        }
+        if (best != -1) {
+            return best;
+        }
+        return unconnected == -1 ? root : unconnected;
+    }
+
+    /**
+     * The avoid heuristic: grow a shortest path tree from a random root and weigh each vertex by
+     * how much the current landmarks underestimate its distance from the root. Subtrees that
+     * contain a landmark weigh nothing. The new landmark is the leaf reached by always stepping
+     * into the heaviest subtree
+     * @return the new landmark, or -1 if every subtree holds a landmark already
+     */
+    private static int avoid(CsrGraph graph, DeltaStepping forward, int[] landmarks, IntArray[] from,
+                             IntArray[] to, int numPicked, int root) {
+        int numVertices = graph.getNumVertices();
+        int[] fromRoot = forward.calculateReweightedShortestPaths(root);
+
+        /* breadth first search along tight edges gives a shortest path tree, parents before children */
+        int[] parent = new int[numVertices + 1];
+        int[] order = new int[numVertices];
+        int numReached = 0;
+        parent[root] = root;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            order[numReached++] = u;
+            for (int edge = graph.edgesBegin(u); edge < graph.edgesEnd(u); edge++) {
+                int v = graph.getHead(edge);
+                if (parent[v] == 0 && (long) fromRoot[u] + graph.getCost(edge) == fromRoot[v]) {
+                    parent[v] = u;
+                    queue.add(v);
+                }
+            }
+        }
+
+        boolean[] isLandmark = new boolean[numVertices + 1];
+        for (int i = 0; i < numPicked; i++) {
+            isLandmark[landmarks[i]] = true;
+        }
+        long[] size = new long[numVertices + 1];
+        boolean[] holdsLandmark = new boolean[numVertices + 1];
+        for (int i = numReached - 1; i >= 0; i--) {
+            int v = order[i];
+            holdsLandmark[v] |= isLandmark[v];
+            if (!holdsLandmark[v]) {
+                size[v] += fromRoot[v] - lowerBound(from, to, numPicked, root, v);
+            } else {
+                size[v] = 0;
+            }
+            if (v != root) {
+                holdsLandmark[parent[v]] |= holdsLandmark[v];
+                size[parent[v]] += size[v];
+            }
+        }
+        if (size[root] == 0) {
+            return -1;
+        }
+
+        int current = root;
+        while (true) {
+            int heaviestChild = -1;
+            for (int edge = graph.edgesBegin(current); edge < graph.edgesEnd(current); edge++) {
+                int v = graph.getHead(edge);
+                if (v != root && parent[v] == current && size[v] > 0
+                        && (heaviestChild == -1 || size[v] > size[heaviestChild])) {
+                    heaviestChild = v;
+                }
+            }
+            if (heaviestChild == -1) {
+                return current;
+            }
+            current = heaviestChild;
+        }
+    }
+
+    /**
+     * Largest landmark lower bound on the reweighted distance from u to v, 0 if none applies
+     */
+    private static long lowerBound(IntArray[] from, IntArray[] to, int numLandmarks, int u, int v) {
+        long best = 0;
+        for (int i = 0; i < numLandmarks; i++) {
+            int fromToU = from[i].get(u);
+            int fromToV = from[i].get(v);
+            if (fromToU != Integer.MAX_VALUE && fromToV != Integer.MAX_VALUE) {
+                best = Math.max(best, (long) fromToV - fromToU);
+            }
+            int uToLandmark = to[i].get(u);
+            int vToLandmark = to[i].get(v);
+            if (uToLandmark != Integer.MAX_VALUE && vToLandmark != Integer.MAX_VALUE) {
+                best = Math.max(best, (long) uToLandmark - vToLandmark);
+            }
+        }
+        return best;
+    }
+
+    private static long roundTrip(int from, int to) {
+        if (from == Integer.MAX_VALUE || to == Integer.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return (long) from + to;
+    }
+
+    /**
+     * Frees the landmark distances and query scratch right away, see IntArray.free(). Must not
+     * be called while a query is in progress, and the index must not be used afterwards.
+     * The graph is left alone
+     */
+    public void free() {
+        for (int i = 0; i < fromLandmark.length; i++) {
+            fromLandmark[i].free();
+            toLandmark[i].free();
+        }
+        scratchPool.clear(scratch -> {
+            scratch.distances.free();
+            scratch.reached.free();
+            scratch.settled.free();
+        });
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * @return the shortest path length from source to target, or Integer.MAX_VALUE if unreachable
+     */
+    public int calculateShortestPath(int source, int target) {
+        return query(source, target).getLength();
+    }
+
+    /**
+     * Runs A* from source to target using the landmark lower bounds. Safe to call from several
+     * threads at once, once maxConcurrentQueries queries are going further callers wait
+     * @param source the designated source vertex
+     * @param target the designated target vertex
+     * @return the shortest path length along with how many vertices were settled
+     */
+    public Result query(int source, int target) {
+        Scratch scratch = scratchPool.acquire();
+        try {
+            return query(source, target, scratch);
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    private Result query(int source, int target, Scratch scratch) {
+        int generation = scratch.nextGeneration();
+        IntArray distances = scratch.distances;
+        IntArray reached = scratch.reached;
+        IntArray settled = scratch.settled;
+
+        /* entries are {distance + bound, vertex, distance}, stale ones are skipped when polled */
+        PriorityQueue<long[]> heap = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        int sourceBound = lowerBound(source, target);
+        if (sourceBound != Integer.MAX_VALUE) {
+            distances.set(source, 0);
+            reached.set(source, generation);
+            heap.add(new long[]{sourceBound, source, 0});
+        }
+        int numSettled = 0;
+        while (!heap.isEmpty()) {
+            long[] entry = heap.poll();
+            int vertex = (int) entry[1];
+            int distance = (int) entry[2];
+            if (settled.get(vertex) == generation || distance > distances.get(vertex)) {
+                continue;
+            }
+            settled.set(vertex, generation);
+            numSettled++;
+            if (vertex == target) {
+                int length = distance - (graph.getPotential(source) - graph.getPotential(target));
+                return new Result(length, numSettled);
+            }
+            for (int edge = graph.edgesBegin(vertex); edge < graph.edgesEnd(vertex); edge++) {
+                int head = graph.getHead(edge);
+                long candidate = (long) distance + graph.getCost(edge);
+                if (settled.get(head) == generation || candidate >= Integer.MAX_VALUE
+                        || (reached.get(head) == generation && candidate >= distances.get(head))) {
+                    continue;
+                }
+                int bound = lowerBound(head, target);
+                /* the landmarks show the target can't be reached from head */
+                if (bound == Integer.MAX_VALUE) {
+                    continue;
+                }
+                distances.set(head, (int) candidate);
+                reached.set(head, generation);
+                heap.add(new long[]{candidate + bound, head, candidate});
+            }
+        }
+        return new Result(Integer.MAX_VALUE, numSettled);
+    }
+
+    /**
+     * Largest landmark lower bound on the reweighted distance from vertex to target
+     * @return the bound, or Integer.MAX_VALUE if some landmark proves target unreachable from vertex
+     */
+    private int lowerBound(int vertex, int target) {
+        long best = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            /* d(L, v) + d(v, t) >= d(L, t) */
+            int fromToVertex = fromLandmark[i].get(vertex);
+            int fromToTarget = fromLandmark[i].get(target);
+            if (fromToTarget == Integer.MAX_VALUE) {
+                if (fromToVertex != Integer.MAX_VALUE) {
+                    return Integer.MAX_VALUE;
+                }
+            } else if (fromToVertex != Integer.MAX_VALUE) {
+                best = Math.max(best, (long) fromToTarget - fromToVertex);
+            }
+            /* d(v, t) + d(t, L) >= d(v, L) */
+            int vertexToLandmark = toLandmark[i].get(vertex);
+            int targetToLandmark = toLandmark[i].get(target);
+            if (vertexToLandmark == Integer.MAX_VALUE) {
+                if (targetToLandmark != Integer.MAX_VALUE) {
+                    return Integer.MAX_VALUE;
+                }
+            } else if (targetToLandmark != Integer.MAX_VALUE) {
+                best = Math.max(best, (long) vertexToLandmark - targetToLandmark);
+            }
+        }
+        return (int) Math.min(best, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Allocates a new set of scratch arrays for the pool
+     */
+    private Scratch newScratch() {
+        int length = graph.getNumVertices() + 1;
+        int id = nextScratchId.getAndIncrement();
+        Scratch scratch;
+        try {
+            scratch = new Scratch(allocator.allocate("alt-distances-" + id, length),
+                    allocator.allocate("alt-reached-" + id, length),
+                    allocator.allocate("alt-settled-" + id, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        /* a mapped file may hold generations from an earlier process */
+        scratch.reached.fill(0);
+        scratch.settled.fill(0);
+        return scratch;
+    }
+
+    /**
+     * Outcome of a point query
+     */
+    public static class Result {
+        private int length;
+        private int settledVertices;
+
+        Result(int length, int settledVertices) {
+            this.length = length;
+            this.settledVertices = settledVertices;
+        }
+
+        /**
+         * @return the shortest path length, or Integer.MAX_VALUE if the target is unreachable
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return number of vertices taken off the heap before the target was reached
+         */
+        public int getSettledVertices() {
+            return settledVertices;
+        }
+    }
+
+    /**
+     * Arrays used by one query at a time. Instead of clearing them, each query gets a
+     * new generation number and an entry only counts if it carries the current generation
+     */
+    private static class Scratch {
+        IntArray distances;
+        IntArray reached;
+        IntArray settled;
+        int generation;
+
+        Scratch(IntArray distances, IntArray reached, IntArray settled) {
+            this.distances = distances;
+            this.reached = reached;
+            this.settled = settled;
+        }
+
+        int nextGeneration() {
+            if (generation == Integer.MAX_VALUE) {
+                reached.fill(0);
+                settled.fill(0);
+                generation = 0;
+            }
+            return ++generation;
+        }
+    }
+}
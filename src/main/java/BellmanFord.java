@@ -201,6 +201,59 @@ public class BellmanFord {
         return true;
     }
 
+    /**
+     * Runs Bellman-Ford from the extra vertex 0 of Johnson's algorithm over a CsrGraph, then stores
+     * the resulting weights as the graph's potentials and reweighs its edges in place.
+     * Unlike calculateShortestPaths, only one distance per vertex is kept (relaxing in place),
+     * and the arrays come from the allocator, so it also works on graphs stored off the heap
+     *
+     * @param graph the graph, its costs are overwritten with the reweighted costs
+     * @param allocator decides where the distance scratch array is stored
+     * @return false if a negative cycle exists in the graph, true if otherwise
+     * @throws IOException thrown if the allocator couldn't map its backing file
+     */
+    public static boolean reweight(CsrGraph graph, IntArrayAllocator allocator) throws IOException {
+        int numVertices = graph.getNumVertices();
+        /* vertex 0 has a zero cost edge to every vertex, so every distance starts at 0 */
+        IntArray distances = allocator.allocate("bellmanford", numVertices + 1);
+        distances.fill(0);
+
+        /*
+         * A shortest path from 0 has at most numVertices edges, the first of which is already
+         * accounted for. If the numVertices-th pass still improves a distance there is a negative cycle
+         */
+        boolean changed = true;
+        for (int i = 1; i <= numVertices && changed; i++) {
+            changed = false;
+            for (int tail = 1; tail <= numVertices; tail++) {
+                long tailDistance = distances.get(tail);
+                for (int edge = graph.edgesBegin(tail); edge < graph.edgesEnd(tail); edge++) {
+                    int head = graph.getHead(edge);
+                    long candidate = tailDistance + graph.getCost(edge);
+                    if (candidate < distances.get(head)) {
+                        distances.set(head, (int) candidate);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        if (changed) {
+            distances.free();
+            return false;
+        }
+        for (int v = 1; v <= numVertices; v++) {
+            graph.setPotential(v, distances.get(v));
+        }
+        for (int tail = 1; tail <= numVertices; tail++) {
+            for (int edge = graph.edgesBegin(tail); edge < graph.edgesEnd(tail); edge++) {
+                int newCost = graph.getCost(edge) + distances.get(tail) - distances.get(graph.getHead(edge));
+                graph.setCost(edge, newCost);
+            }
+        }
+        distances.free();
+        return true;
+    }
+
     public Map<Integer, List<Integer>> getEdgeMappings() {
         return edgeMappings;
     }
@@ -0,0 +1,265 @@
+package main.java;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Records the progress of an all pairs run so that a killed run can pick up where it left off.
+ * For every graph file it keeps the set of sources whose shortest paths are done and the
+ * shortest shortest path length over them, tied to a fingerprint of the file's contents so that
+ * a file that changed between runs is started over instead of mixing old and new results.
+ *
+ * Progress is recorded in memory by the threads doing the work, and a background thread
+ * writes it to disk at a fixed interval, so workers never wait on the disk. The file is
+ * replaced atomically, a crash mid-write leaves the previous checkpoint intact
+ */
+public class Checkpoint implements Closeable {
+    /* identifies a checkpoint file with per graph fingerprints */
+    private static final int MAGIC = 0x4A4F4832;
+
+    private File file;
+    /* progress per graph file */
+    private Map<String, GraphProgress> graphs;
+    /* true if there is progress that hasn't been written yet */
+    private boolean dirty;
+    private ScheduledExecutorService writer;
+
+    private Checkpoint(File file) {
+        this.file = file;
+        this.graphs = new HashMap<>();
+    }
+
+    /**
+     * Opens a checkpoint, resuming from the file if it exists, and starts writing it
+     * in the background
+     * @param file the checkpoint file
+     * @param intervalMillis how often progress is written, in milliseconds
+     * @return the checkpoint
+     * @throws IOException thrown if an existing checkpoint file couldn't be read
+     */
+    public static Checkpoint open(File file, long intervalMillis) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        if (file.exists()) {
+            checkpoint.read();
+        }
+        checkpoint.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpoint.writer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint.write();
+            } catch (IOException e) {
+                /* keep the run going, the next write may succeed */
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return checkpoint;
+    }
+
+    /**
+     * Fingerprints a file by its contents
+     * @param file the file
+     * @return the file length in the high 32 bits and the CRC32 of its contents in the low 32 bits
+     * @throws IOException thrown if the file couldn't be read
+     */
+    public static long fingerprint(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return (file.length() << 32) ^ crc.getValue();
+    }
+
+    /**
+     * Ties the progress of a graph file to its contents. Call it before asking about the graph:
+     * progress recorded for other contents, or before the fingerprint was known, is thrown away
+     * @param graph the graph file
+     * @param fingerprint fingerprint of the graph file, see fingerprint()
+     * @return true if earlier progress was thrown away
+     */
+    public synchronized boolean startGraph(String graph, long fingerprint) {
+        GraphProgress progress = graphs.get(graph);
+        if (progress != null && progress.fingerprint == fingerprint) {
+            return false;
+        }
+        graphs.put(graph, new GraphProgress(fingerprint));
+        dirty = true;
+        return progress != null;
+    }
+
+    /**
+     * @return true if the shortest paths from the source were already calculated
+     */
+    public synchronized boolean isDone(String graph, int source) {
+        GraphProgress progress = graphs.get(graph);
+        return progress != null && (progress.done || progress.sources.get(source));
+    }
+
+    /**
+     * @return true if the graph was already finished
+     */
+    public synchronized boolean isGraphDone(String graph) {
+        GraphProgress progress = graphs.get(graph);
+        return progress != null && progress.done;
+    }
+
+    /**
+     * Records that the shortest paths from a source are done
+     * @param graph the graph file
+     * @param source the source vertex
+     * @param shortestPath the shortest path length found from the source
+     */
+    public synchronized void complete(String graph, int source, int shortestPath) {
+        GraphProgress progress = graphs.computeIfAbsent(graph, k -> new GraphProgress(0));
+        progress.sources.set(source);
+        progress.shortestShortest = Math.min(progress.shortestShortest, shortestPath);
+        dirty = true;
+    }
+
+    /**
+     * Records that a graph is done, either because every source is or because it
+     * had to be skipped
+     * @param graph the graph file
+     * @param shortestPath the shortest path length found in the graph
+     */
+    public synchronized void completeGraph(String graph, int shortestPath) {
+        GraphProgress progress = graphs.computeIfAbsent(graph, k -> new GraphProgress(0));
+        progress.done = true;
+        progress.sources.clear();
+        progress.shortestShortest = Math.min(progress.shortestShortest, shortestPath);
+        dirty = true;
+    }
+
+    /**
+     * @return the shortest shortest path length over everything done so far, in every graph
+     */
+    public synchronized int getShortestShortest() {
+        int shortestShortest = Integer.MAX_VALUE;
+        for (GraphProgress progress : graphs.values()) {
+            shortestShortest = Math.min(shortestShortest, progress.shortestShortest);
+        }
+        return shortestShortest;
+    }
+
+    /**
+     * Stops the background writer and writes any remaining progress
+     * @throws IOException thrown if the checkpoint couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+
+    /**
+     * Copies the progress under the lock, then writes the copy without holding it so
+     * complete() never waits on the disk
+     */
+    private void write() throws IOException {
+        Map<String, GraphProgress> copy = new HashMap<>();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            for (Map.Entry<String, GraphProgress> entry : graphs.entrySet()) {
+                copy.put(entry.getKey(), entry.getValue().copy());
+            }
+            dirty = false;
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, GraphProgress> entry : copy.entrySet()) {
+                GraphProgress progress = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(progress.fingerprint);
+                out.writeBoolean(progress.done);
+                out.writeInt(progress.shortestShortest);
+                long[] words = progress.sources.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+            out.flush();
+            /* make sure the data is on disk before the rename makes it the checkpoint */
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file, or one from an older version: " + file);
+            }
+            int numGraphs = in.readInt();
+            for (int i = 0; i < numGraphs; i++) {
+                String graph = in.readUTF();
+                GraphProgress progress = new GraphProgress(in.readLong());
+                progress.done = in.readBoolean();
+                progress.shortestShortest = in.readInt();
+                long[] words = new long[in.readInt()];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = in.readLong();
+                }
+                progress.sources = BitSet.valueOf(words);
+                graphs.put(graph, progress);
+            }
+        }
+    }
+
+    /**
+     * What is known about one graph file
+     */
+    private static class GraphProgress {
+        /* fingerprint of the file the progress belongs to, 0 if unknown */
+        long fingerprint;
+        /* true if the whole graph is done */
+        boolean done;
+        /* sources done so far, while the graph isn't */
+        BitSet sources = new BitSet();
+        /* shortest shortest path length over the sources done */
+        int shortestShortest = Integer.MAX_VALUE;
+
+        GraphProgress(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        GraphProgress copy() {
+            GraphProgress copy = new GraphProgress(fingerprint);
+            copy.done = done;
+            copy.sources = (BitSet) sources.clone();
+            copy.shortestShortest = shortestShortest;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package main.java;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed sparse row representation of a directed graph, built once from the
+ * adjacency maps produced by Bellman-Ford so that repeated shortest path computations
+ * can walk plain arrays instead of hashing Edge objects.
+ *
+ * The arrays are IntArrays, so a graph read with fromFile() or read() can be kept off
+ * the Java heap entirely by passing IntArrayAllocator.offHeap() or IntArrayAllocator.mapped()
+ */
+public class CsrGraph {
+    /* number of vertices, vertices are numbered 1..numVertices */
+    private int numVertices;
+    /* outbound edges of vertex v occupy indices offsets[v] (inclusive) to offsets[v + 1] (exclusive) */
+    private IntArray offsets;
+    /* head vertex of each edge */
+    private IntArray heads;
+    /* cost of each edge, already reweighted if the graph came out of Johnson's Bellman-Ford step */
+    private IntArray costs;
+    /* weights of each vertex used to reweigh edges for Johnson's algorithm */
+    private IntArray potentials;
+
+    private CsrGraph(int numVertices, IntArray offsets, IntArray heads, IntArray costs, IntArray potentials) {
+        this.numVertices = numVertices;
+        this.offsets = offsets;
+        this.heads = heads;
+        this.costs = costs;
+        this.potentials = potentials;
+    }
+
+    /**
+     * Builds a CsrGraph on the heap from the mappings used by BellmanFord and HeapDijkstra
+     * @param edgeMappings input graph represented as an adjacency list
+     * @param edgeToCost mapping edges to their cost
+     * @param johnsonWeights weights used to reweigh the edges, or null if the edges were not reweighted
+     * @param numVertices number of vertices in the graph
+     * @return the graph in compressed sparse row form
+     */
+    public static CsrGraph fromMappings(Map<Integer, List<Integer>> edgeMappings, Map<Edge, Integer> edgeToCost,
+                                        Map<Integer, Integer> johnsonWeights, int numVertices) {
+        IntArray offsets = new HeapIntArray(numVertices + 2);
+        /* vertex 0 is an artifact of Bellman-Ford, its edges are left out */
+        for (int v = 1; v <= numVertices; v++) {
+            List<Integer> headVertices = edgeMappings.get(v);
+            int degree = headVertices == null ? 0 : headVertices.size();
+            offsets.set(v + 1, offsets.get(v) + degree);
+        }
+        int numEdges = offsets.get(numVertices + 1);
+        IntArray heads = new HeapIntArray(numEdges);
+        IntArray costs = new HeapIntArray(numEdges);
+        for (int v = 1; v <= numVertices; v++) {
+            List<Integer> headVertices = edgeMappings.get(v);
+            if (headVertices == null) {
+                continue;
+            }
+            int index = offsets.get(v);
+            for (Integer head : headVertices) {
+                heads.set(index, head);
+                costs.set(index, edgeToCost.get(new Edge(v, head)));
+                index++;
+            }
+        }
+        IntArray potentials = new HeapIntArray(numVertices + 1);
+        if (johnsonWeights != null) {
+            for (int v = 1; v <= numVertices; v++) {
+                potentials.set(v, johnsonWeights.get(v));
+            }
+        }
+        return new CsrGraph(numVertices, offsets, heads, costs, potentials);
+    }
+
+    /**
+     * Builds a CsrGraph straight from a graph file without going through edge maps, so the
+     * only memory used is whatever the allocator hands out. The file is read twice, once to
+     * count the degree of each vertex and once to fill in the edges. The edges are not
+     * reweighted, run BellmanFord.reweight() on the result for Johnson's algorithm
+     * @param graphFilePath path to the graph file
+     * @param allocator decides where the arrays are stored
+     * @return the graph in compressed sparse row form
+     * @throws IOException thrown if the file couldn't be read
+     */
+    public static CsrGraph fromFile(String graphFilePath, IntArrayAllocator allocator) throws IOException {
+        File file = new File(graphFilePath);
+        if (!file.exists()) {
+            throw new FileNotFoundException();
+        }
+        int numVertices;
+        IntArray offsets;
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            /*
+             ** Assume the graph is stored in the format:
+             *  tail_vertex head_vertex edge_length
+             *
+             *  With the first line: number_of_vertices number_of_edges
+             */
+            String[] splitLine = br.readLine().split(" ");
+            numVertices = Integer.parseInt(splitLine[0]);
+            offsets = allocator.allocate("offsets", numVertices + 2);
+            offsets.fill(0);
+            /* count the out degree of every vertex into offsets[tail] */
+            String line;
+            while ((line = br.readLine()) != null) {
+                int tail = Integer.parseInt(line.substring(0, line.indexOf(' ')));
+                offsets.set(tail, offsets.get(tail) + 1);
+            }
+        }
+        /* running sum, offsets[v] is now one past the last edge of v */
+        for (int v = 1; v <= numVertices; v++) {
+            offsets.set(v, offsets.get(v - 1) + offsets.get(v));
+        }
+        offsets.set(numVertices + 1, offsets.get(numVertices));
+
+        IntArray heads = allocator.allocate("heads", offsets.get(numVertices + 1));
+        IntArray costs = allocator.allocate("costs", offsets.get(numVertices + 1));
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            /* Consume the first line */
+            br.readLine();
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] splitLine = line.split(" ");
+                int tail = Integer.parseInt(splitLine[0]);
+                /* fill each vertex's edges back to front, leaving offsets[v] at its first edge */
+                int index = offsets.get(tail) - 1;
+                offsets.set(tail, index);
+                heads.set(index, Integer.parseInt(splitLine[1]));
+                costs.set(index, Integer.parseInt(splitLine[2]));
+            }
+        }
+        IntArray potentials = allocator.allocate("potentials", numVertices + 1);
+        potentials.fill(0);
+        return new CsrGraph(numVertices, offsets, heads, costs, potentials);
+    }
+
+    /**
+     * Builds the graph with every edge turned around, on the heap
+     * @see #reverse(IntArrayAllocator)
+     */
+    public CsrGraph reverse() {
+        try {
+            return reverse(IntArrayAllocator.heap());
+        } catch (IOException e) {
+            /* the heap allocator doesn't do I/O */
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the graph with every edge turned around. Costs and potentials are copied as
+     * they are, so the reverse of a reweighted graph is reweighted too
+     * @param allocator decides where the arrays are stored
+     * @return the reverse graph
+     * @throws IOException thrown if the allocator couldn't map its backing file
+     */
+    public CsrGraph reverse(IntArrayAllocator allocator) throws IOException {
+        IntArray reverseOffsets = allocator.allocate("reverse-offsets", numVertices + 2);
+        reverseOffsets.fill(0);
+        /* count the in degree of every vertex into reverseOffsets[head] */
+        for (int edge = 0; edge < getNumEdges(); edge++) {
+            int head = heads.get(edge);
+            reverseOffsets.set(head, reverseOffsets.get(head) + 1);
+        }
+        /* running sum, reverseOffsets[v] is now one past the last edge of v */
+        for (int v = 1; v <= numVertices; v++) {
+            reverseOffsets.set(v, reverseOffsets.get(v - 1) + reverseOffsets.get(v));
+        }
+        reverseOffsets.set(numVertices + 1, reverseOffsets.get(numVertices));
+
+        IntArray reverseHeads = allocator.allocate("reverse-heads", getNumEdges());
+        IntArray reverseCosts = allocator.allocate("reverse-costs", getNumEdges());
+        for (int tail = 1; tail <= numVertices; tail++) {
+            for (int edge = edgesBegin(tail); edge < edgesEnd(tail); edge++) {
+                int head = heads.get(edge);
+                /* fill each vertex's edges back to front, leaving reverseOffsets[v] at its first edge */
+                int index = reverseOffsets.get(head) - 1;
+                reverseOffsets.set(head, index);
+                reverseHeads.set(index, tail);
+                reverseCosts.set(index, costs.get(edge));
+            }
+        }
+        IntArray reversePotentials = allocator.allocate("reverse-potentials", numVertices + 1);
+        for (int v = 0; v <= numVertices; v++) {
+            reversePotentials.set(v, potentials.get(v));
+        }
+        return new CsrGraph(numVertices, reverseOffsets, reverseHeads, reverseCosts, reversePotentials);
+    }
+
+    /**
+     * Writes the graph to a snapshot file that can be loaded by another process with read()
+     * @param file the snapshot file
+     * @throws IOException thrown if the file couldn't be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out
+                     = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(numVertices);
+            out.writeInt(getNumEdges());
+            for (int i = 0; i < offsets.length(); i++) {
+                out.writeInt(offsets.get(i));
+            }
+            for (int i = 0; i < heads.length(); i++) {
+                out.writeInt(heads.get(i));
+                out.writeInt(costs.get(i));
+            }
+            for (int i = 0; i < potentials.length(); i++) {
+                out.writeInt(potentials.get(i));
+            }
+        }
+    }
+
+    /**
+     * Loads a graph from a snapshot file written by write() onto the heap
+     * @param file the snapshot file
+     * @return the graph stored in the snapshot
+     * @throws IOException thrown if the file couldn't be read
+     */
+    public static CsrGraph read(File file) throws IOException {
+        return read(file, IntArrayAllocator.heap());
+    }
+
+    /**
+     * Loads a graph from a snapshot file written by write()
+     * @param file the snapshot file
+     * @param allocator decides where the arrays are stored
+     * @return the graph stored in the snapshot
+     * @throws IOException thrown if the file couldn't be read
+     */
+    public static CsrGraph read(File file, IntArrayAllocator allocator) throws IOException {
+        try (DataInputStream in
+                     = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int numVertices = in.readInt();
+            int numEdges = in.readInt();
+            IntArray offsets = allocator.allocate("offsets", numVertices + 2);
+            for (int i = 0; i < offsets.length(); i++) {
+                offsets.set(i, in.readInt());
+            }
+            IntArray heads = allocator.allocate("heads", numEdges);
+            IntArray costs = allocator.allocate("costs", numEdges);
+            for (int i = 0; i < numEdges; i++) {
+                heads.set(i, in.readInt());
+                costs.set(i, in.readInt());
+            }
+            IntArray potentials = allocator.allocate("potentials", numVertices + 1);
+            for (int i = 0; i < potentials.length(); i++) {
+                potentials.set(i, in.readInt());
+            }
+            return new CsrGraph(numVertices, offsets, heads, costs, potentials);
+        }
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    public int getNumEdges() {
+        return offsets.get(numVertices + 1);
+    }
+
+    /**
+     * @param vertex a vertex in the graph
+     * @return index of the first outbound edge of the vertex
+     */
+    public int edgesBegin(int vertex) {
+        return offsets.get(vertex);
+    }
+
+    /**
+     * @param vertex a vertex in the graph
+     * @return index one past the last outbound edge of the vertex
+     */
+    public int edgesEnd(int vertex) {
+        return offsets.get(vertex + 1);
+    }
+
+    public int getHead(int edgeIndex) {
+        return heads.get(edgeIndex);
+    }
+
+    public int getCost(int edgeIndex) {
+        return costs.get(edgeIndex);
+    }
+
+    public int getPotential(int vertex) {
+        return potentials.get(vertex);
+    }
+
+    void setCost(int edgeIndex, int cost) {
+        costs.set(edgeIndex, cost);
+    }
+
+    void setPotential(int vertex, int potential) {
+        potentials.set(vertex, potential);
+    }
+
+    /**
+     * Frees the graph's arrays right away, see IntArray.free(). The graph must not be used afterwards
+     */
+    public void free() {
+        offsets.free();
+        heads.free();
+        costs.free();
+        potentials.free();
+    }
+}
@@ -0,0 +1,369 @@
+package main.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements the parallel delta-stepping single source shortest path algorithm.
+ * Vertices are kept in buckets of width delta according to their tentative distance,
+ * and the edges leaving a bucket are relaxed in parallel. Light edges (cost <= delta) can
+ * put vertices back into the current bucket and are relaxed until the bucket stays empty,
+ * heavy edges are relaxed once per bucket afterwards.
+ *
+ * Edge costs must be non-negative, which holds for a graph reweighted by Bellman-Ford
+ * as the first step of Johnson's algorithm.
+ */
+public class DeltaStepping {
+    /* frontiers smaller than this are relaxed on the calling thread */
+    private static final int MIN_PARALLEL_FRONTIER = 256;
+    /* numbers each set of scratch arrays, so a mapped allocator gives every run its own files */
+    private static final AtomicInteger nextScratchId = new AtomicInteger();
+    /* by default as many runs as there are processors get scratch arrays at once */
+    private static final int DEFAULT_MAX_CONCURRENT_RUNS = Runtime.getRuntime().availableProcessors();
+
+    private CsrGraph graph;
+    /* width of a bucket */
+    private int delta;
+    /* pool the relaxation tasks are submitted to */
+    private ExecutorService executor;
+    /* number of tasks a frontier is split into */
+    private int parallelism;
+    /* decides where the per-run distance and stamp arrays are stored */
+    private IntArrayAllocator scratchAllocator;
+    /* scratch arrays, reused across runs instead of reallocating numVertices sized arrays */
+    private ScratchPool<Scratch> scratchPool;
+
+    /**
+     * Constructs a DeltaStepping object over a graph with non-negative edge costs.
+     * The executor is not shut down by this object
+     * @param graph the (reweighted) graph
+     * @param delta width of a bucket, must be positive
+     * @param executor pool the relaxations run on
+     * @param parallelism number of tasks each frontier is split into, usually the pool size
+     */
+    public DeltaStepping(CsrGraph graph, int delta, ExecutorService executor, int parallelism) {
+        this(graph, delta, executor, parallelism, IntArrayAllocator.heap());
+    }
+
+    /**
+     * Constructs a DeltaStepping object over a graph with non-negative edge costs, keeping
+     * the distance scratch arrays wherever the allocator puts them. The executor is not shut down
+     * by this object
+     * @param graph the (reweighted) graph
+     * @param delta width of a bucket, must be positive
+     * @param executor pool the relaxations run on
+     * @param parallelism number of tasks each frontier is split into, usually the pool size
+     * @param scratchAllocator decides where the distance scratch arrays are stored
+     */
+    public DeltaStepping(CsrGraph graph, int delta, ExecutorService executor, int parallelism,
+                         IntArrayAllocator scratchAllocator) {
+        this(graph, delta, executor, parallelism, scratchAllocator, DEFAULT_MAX_CONCURRENT_RUNS);
+    }
+
+    /**
+     * Constructs a DeltaStepping object over a graph with non-negative edge costs, keeping
+     * the distance scratch arrays wherever the allocator puts them. The executor is not shut down
+     * by this object
+     * @param graph the (reweighted) graph
+     * @param delta width of a bucket, must be positive
+     * @param executor pool the relaxations run on
+     * @param parallelism number of tasks each frontier is split into, usually the pool size
+     * @param scratchAllocator decides where the distance scratch arrays are stored
+     * @param maxConcurrentRuns most runs that hold scratch arrays at once, further callers wait
+     */
+    public DeltaStepping(CsrGraph graph, int delta, ExecutorService executor, int parallelism,
+                         IntArrayAllocator scratchAllocator, int maxConcurrentRuns) {
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta must be positive, was " + delta);
+        }
+        this.graph = graph;
+        this.delta = delta;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.scratchAllocator = scratchAllocator;
+        this.scratchPool = new ScratchPool<>(maxConcurrentRuns, this::newScratch);
+    }
+
+    /**
+     * Picks a bucket width equal to the average edge cost of the graph
+     * @param graph the (reweighted) graph
+     * @return a positive bucket width
+     */
+    public static int defaultDelta(CsrGraph graph) {
+        long totalCost = 0;
+        for (int i = 0; i < graph.getNumEdges(); i++) {
+            totalCost += graph.getCost(i);
+        }
+        if (graph.getNumEdges() == 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, totalCost / graph.getNumEdges()));
+    }
+
+    /**
+     * Frees the scratch arrays of finished runs right away, see IntArray.free(). Must not be
+     * called while a run is in progress, later runs allocate new scratch. The graph is left alone
+     */
+    public void free() {
+        scratchPool.clear(scratch -> {
+            scratch.distances.free();
+            scratch.roundStamps.free();
+            scratch.bucketStamps.free();
+        });
+    }
+
+    /**
+     * Calculates the shortest path lengths from a source to every vertex. Safe to call from
+     * several threads at once, each run gets scratch arrays of its own; once maxConcurrentRuns
+     * runs are going, further callers wait for one to finish
+     * @param source the designated source vertex
+     * @return shortest path lengths indexed by vertex, index 0 is unused and unreachable vertices
+     *         have length Integer.MAX_VALUE
+     */
+    public int[] calculateShortestPaths(int source) {
+        Scratch scratch = scratchPool.acquire();
+        try {
+            IntArray distances = run(source, -1, scratch);
+            int[] shortestPathLengths = new int[graph.getNumVertices() + 1];
+            for (int i = 1; i < shortestPathLengths.length; i++) {
+                shortestPathLengths[i] = originalLength(source, i, distances.get(i));
+            }
+            return shortestPathLengths;
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    /**
+     * Calculates the shortest path lengths from a source to every vertex in the reweighted
+     * graph, without undoing the Johnson reweighting
+     * @param source the designated source vertex
+     * @return reweighted shortest path lengths indexed by vertex, index 0 is unused and unreachable
+     *         vertices have length Integer.MAX_VALUE
+     */
+    public int[] calculateReweightedShortestPaths(int source) {
+        Scratch scratch = scratchPool.acquire();
+        try {
+            IntArray distances = run(source, -1, scratch);
+            int[] shortestPathLengths = new int[graph.getNumVertices() + 1];
+            for (int i = 1; i < shortestPathLengths.length; i++) {
+                shortestPathLengths[i] = distances.get(i);
+            }
+            shortestPathLengths[0] = Integer.MAX_VALUE;
+            return shortestPathLengths;
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    /**
+     * Calculates the shortest path lengths from a source to every vertex in the reweighted
+     * graph like calculateReweightedShortestPaths(int), but writes them into an array the caller
+     * provides, which can live off the heap
+     * @param source the designated source vertex
+     * @param shortestPathLengths receives the lengths indexed by vertex, needs numVertices + 1 elements
+     */
+    public void calculateReweightedShortestPaths(int source, IntArray shortestPathLengths) {
+        Scratch scratch = scratchPool.acquire();
+        try {
+            IntArray distances = run(source, -1, scratch);
+            for (int i = 1; i <= graph.getNumVertices(); i++) {
+                shortestPathLengths.set(i, distances.get(i));
+            }
+            shortestPathLengths.set(0, Integer.MAX_VALUE);
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    /**
+     * Calculates the shortest path length between two vertices, stopping as soon as the
+     * bucket holding the target has been settled
+     * @param source the designated source vertex
+     * @param target the designated target vertex
+     * @return the shortest path length, or Integer.MAX_VALUE if the target is unreachable
+     */
+    public int calculateShortestPath(int source, int target) {
+        Scratch scratch = scratchPool.acquire();
+        try {
+            IntArray distances = run(source, target, scratch);
+            return originalLength(source, target, distances.get(target));
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    /**
+     * The calculated lengths are offset by p(source) - p(dest), subtract this quantity
+     * to get the real shortest path length
+     */
+    private int originalLength(int source, int dest, int reweightedLength) {
+        if (reweightedLength == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return reweightedLength - (graph.getPotential(source) - graph.getPotential(dest));
+    }
+
+    /**
+     * Main loop of delta-stepping
+     * @param source the designated source vertex
+     * @param target vertex to stop at, or -1 to settle every reachable vertex
+     * @param scratch the arrays this run works in
+     * @return reweighted shortest path lengths, valid until the scratch is released
+     */
+    private IntArray run(int source, int target, Scratch scratch) {
+        IntArray distances = scratch.distances;
+        distances.fill(Integer.MAX_VALUE);
+        ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Integer>> buckets = new ConcurrentSkipListMap<>();
+        /* stamps used to skip duplicate entries, a vertex can be queued once per improvement */
+        IntArray roundStamps = scratch.roundStamps;
+        IntArray bucketStamps = scratch.bucketStamps;
+        roundStamps.fill(0);
+        bucketStamps.fill(0);
+        int round = 0;
+
+        relax(distances, buckets, source, 0);
+        while (!buckets.isEmpty()) {
+            int bucketIndex = buckets.firstKey();
+            if (target != -1) {
+                int targetDistance = distances.get(target);
+                /* every bucket before this one is settled, so is the target */
+                if (targetDistance != Integer.MAX_VALUE && targetDistance / delta < bucketIndex) {
+                    break;
+                }
+            }
+            List<Integer> settled = new ArrayList<>();
+            ConcurrentLinkedQueue<Integer> bucket;
+            /* relaxing light edges may refill the current bucket, keep going until it stays empty */
+            while ((bucket = buckets.remove(bucketIndex)) != null) {
+                round++;
+                List<Integer> frontier = new ArrayList<>(bucket.size());
+                for (Integer vertex : bucket) {
+                    /* stale entry, the vertex has since moved to another bucket */
+                    if (distances.get(vertex) / delta != bucketIndex || roundStamps.get(vertex) == round) {
+                        continue;
+                    }
+                    roundStamps.set(vertex, round);
+                    frontier.add(vertex);
+                    if (bucketStamps.get(vertex) != bucketIndex + 1) {
+                        bucketStamps.set(vertex, bucketIndex + 1);
+                        settled.add(vertex);
+                    }
+                }
+                relaxAll(distances, buckets, frontier, true);
+            }
+            relaxAll(distances, buckets, settled, false);
+        }
+        return distances;
+    }
+
+    /**
+     * Allocates a new set of scratch arrays for the pool
+     */
+    private Scratch newScratch() {
+        int length = graph.getNumVertices() + 1;
+        int id = nextScratchId.getAndIncrement();
+        try {
+            return new Scratch(scratchAllocator.allocate("distances-" + id, length),
+                    scratchAllocator.allocate("roundstamps-" + id, length),
+                    scratchAllocator.allocate("bucketstamps-" + id, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Relaxes the light or heavy edges leaving every vertex in a frontier, splitting the
+     * frontier across the pool when it is large enough
+     */
+    private void relaxAll(IntArray distances,
+                          ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Integer>> buckets,
+                          List<Integer> frontier, boolean light) {
+        if (frontier.size() < MIN_PARALLEL_FRONTIER || parallelism == 1) {
+            relaxRange(distances, buckets, frontier, 0, frontier.size(), light);
+            return;
+        }
+        int chunkSize = (frontier.size() + parallelism - 1) / parallelism;
+        List<Callable<Void>> tasks = new ArrayList<>(parallelism);
+        for (int begin = 0; begin < frontier.size(); begin += chunkSize) {
+            int from = begin;
+            int to = Math.min(frontier.size(), begin + chunkSize);
+            tasks.add(() -> {
+                relaxRange(distances, buckets, frontier, from, to, light);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaxing edges", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Relaxing edges failed", e.getCause());
+        }
+    }
+
+    private void relaxRange(IntArray distances,
+                            ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Integer>> buckets,
+                            List<Integer> frontier, int from, int to, boolean light) {
+        for (int i = from; i < to; i++) {
+            int vertex = frontier.get(i);
+            int distance = distances.get(vertex);
+            for (int edge = graph.edgesBegin(vertex); edge < graph.edgesEnd(vertex); edge++) {
+                int cost = graph.getCost(edge);
+                if ((cost <= delta) != light) {
+                    continue;
+                }
+                long candidate = (long) distance + cost;
+                if (candidate < Integer.MAX_VALUE) {
+                    relax(distances, buckets, graph.getHead(edge), (int) candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lowers the tentative distance of a vertex with a compare-and-set loop, queueing it
+     * in its new bucket if the candidate won
+     */
+    private void relax(IntArray distances,
+                       ConcurrentSkipListMap<Integer, ConcurrentLinkedQueue<Integer>> buckets,
+                       int vertex, int candidate) {
+        while (true) {
+            int current = distances.getVolatile(vertex);
+            if (candidate >= current) {
+                return;
+            }
+            if (distances.compareAndSet(vertex, current, candidate)) {
+                buckets.computeIfAbsent(candidate / delta, k -> new ConcurrentLinkedQueue<>()).add(vertex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Arrays used by one run at a time
+     */
+    private static class Scratch {
+        IntArray distances;
+        IntArray roundStamps;
+        IntArray bucketStamps;
+
+        Scratch(IntArray distances, IntArray roundStamps, IntArray bucketStamps) {
+            this.distances = distances;
+            this.roundStamps = roundStamps;
+            this.bucketStamps = bucketStamps;
+        }
+    }
+}
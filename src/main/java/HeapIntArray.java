@@ -0,0 +1,48 @@
+package main.java;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * IntArray backed by a plain int[] on the Java heap
+ */
+public class HeapIntArray implements IntArray {
+    private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private int[] elements;
+
+    public HeapIntArray(int length) {
+        this.elements = new int[length];
+    }
+
+    @Override
+    public int length() {
+        return elements.length;
+    }
+
+    @Override
+    public int get(int index) {
+        return elements[index];
+    }
+
+    @Override
+    public void set(int index, int value) {
+        elements[index] = value;
+    }
+
+    @Override
+    public int getVolatile(int index) {
+        return (int) ELEMENTS.getVolatile(elements, index);
+    }
+
+    @Override
+    public boolean compareAndSet(int index, int expected, int value) {
+        return ELEMENTS.compareAndSet(elements, index, expected, value);
+    }
+
+    @Override
+    public void fill(int value) {
+        Arrays.fill(elements, value);
+    }
+}
@@ -0,0 +1,38 @@
+package main.java;
+
+/**
+ * Fixed length array of ints that may live on or off the Java heap. CsrGraph and
+ * DeltaStepping keep their arrays behind this interface so that graphs bigger than a
+ * practical heap can be stored in direct or memory mapped buffers
+ */
+public interface IntArray {
+
+    int length();
+
+    int get(int index);
+
+    void set(int index, int value);
+
+    /**
+     * Reads an element with volatile semantics, for use alongside compareAndSet
+     */
+    int getVolatile(int index);
+
+    /**
+     * Atomically sets an element to value if it currently holds expected
+     * @return true if the element was updated
+     */
+    boolean compareAndSet(int index, int expected, int value);
+
+    /**
+     * Sets every element to the same value
+     */
+    void fill(int value);
+
+    /**
+     * Releases the memory behind the array right away instead of whenever the garbage collector
+     * gets to it. The array must not be used afterwards. Arrays on the Java heap do nothing here
+     */
+    default void free() {
+    }
+}
@@ -0,0 +1,43 @@
+package main.java;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decides where the arrays of a CsrGraph or of a shortest path computation are stored
+ */
+public interface IntArrayAllocator {
+
+    /**
+     * Allocates a zeroed array, unless backed by an existing file
+     * @param name what the array holds, used to name backing files
+     * @param length number of elements
+     * @return the new array
+     * @throws IOException thrown if a backing file couldn't be mapped
+     */
+    IntArray allocate(String name, int length) throws IOException;
+
+    /**
+     * @return an allocator that keeps arrays on the Java heap
+     */
+    static IntArrayAllocator heap() {
+        return (name, length) -> new HeapIntArray(length);
+    }
+
+    /**
+     * Direct memory is capped by -XX:MaxDirectMemorySize, which defaults to the maximum heap
+     * size, so graphs bigger than the heap need that flag or mapped() instead
+     * @return an allocator that keeps arrays in direct memory outside the Java heap
+     */
+    static IntArrayAllocator offHeap() {
+        return (name, length) -> OffHeapIntArray.allocate(length);
+    }
+
+    /**
+     * @param directory directory holding one name.bin file per array
+     * @return an allocator that keeps arrays in memory mapped files
+     */
+    static IntArrayAllocator mapped(File directory) {
+        return (name, length) -> OffHeapIntArray.map(new File(directory, name + ".bin"), length);
+    }
+}
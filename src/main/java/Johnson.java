@@ -2,46 +2,261 @@ package main.java;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 /**
  * Class responsible for carrying out Johnson's all pairs shortest paths algorithm
  */
 public class Johnson {
+    /* ranges per graph without -range, not tied to -workers so a rerun with other workers reuses them */
+    private static final int DEFAULT_NUM_RANGES = 256;
     /* maps all pairs shortest path lengths */
     Map<Integer, Integer> allPairsSP;
 
-    public static void main(String[] args) throws FileNotFoundException {
+    /**
+     * Runs Johnson's algorithm over the three graph files. By default each source is handled
+     * by HeapDijkstra, pass "-delta <width|auto>" to use parallel delta-stepping instead and
+     * "-threads <count>" to size its pool (defaults to the number of available processors).
+     * Pass "-workers <count>" to spread the sources over that many JohnsonWorker processes,
+     * "-range <size>" sets how many sources a worker claims at a time (defaults to a 256th of
+     * the vertices). Workers always use delta-stepping and share the "-threads" budget between them.
+     * Pass "-storage offheap" or "-mapped <directory>" to keep the graph out of the Java heap,
+     * which skips the edge maps entirely and implies delta-stepping. Workers follow the same
+     * choice, with "-mapped" they map their arrays in the coordinator's work directory.
+     * "-storage offheap" is capped by -XX:MaxDirectMemorySize, which defaults to the maximum heap
+     * size, so graphs bigger than that need the flag raised or "-mapped" instead.
+     * Pass "-checkpoint <file>" to record finished sources every "-checkpointInterval <seconds>"
+     * (defaults to 60), rerunning with the same file resumes where the last run stopped.
+     * Graph files that changed since the checkpoint was written are started over.
+     * With "-workers" the finished ranges of a file are kept in "<checkpoint>.<file>.work"
+     * until the whole file is done
+     */
+    public static void main(String[] args) throws IOException {
         List<String> graphFiles = Arrays.asList("g1.txt", "g2.txt", "g3.txt");
         int shortestShortest = Integer.MAX_VALUE;
+        String deltaOption = null;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int numWorkers = 0;
+        int rangeSize = 0;
+        String storageOption = null;
+        File mappedDir = null;
+        File checkpointFile = null;
+        int checkpointInterval = 60;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-delta")) {
+                deltaOption = args[i + 1];
+            } else if (args[i].equals("-threads")) {
+                numThreads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-workers")) {
+                numWorkers = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-range")) {
+                rangeSize = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-storage")) {
+                storageOption = args[i + 1];
+            } else if (args[i].equals("-mapped")) {
+                mappedDir = new File(args[i + 1]);
+            } else if (args[i].equals("-checkpoint")) {
+                checkpointFile = new File(args[i + 1]);
+            } else if (args[i].equals("-checkpointInterval")) {
+                checkpointInterval = Integer.parseInt(args[i + 1]);
+            }
+        }
+        boolean offHeap = mappedDir != null || "offheap".equals(storageOption);
+        if (offHeap && deltaOption == null) {
+            deltaOption = "auto";
+        }
+        ExecutorService executor = null;
+        if (deltaOption != null && numWorkers == 0) {
+            /* daemon threads so an exception in main doesn't leave the JVM hanging */
+            executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Checkpoint checkpoint = null;
+        if (checkpointFile != null) {
+            checkpoint = Checkpoint.open(checkpointFile, checkpointInterval * 1000L);
+        }
 
         for (String file : graphFiles) {
             String filePath = System.getProperty("user.dir") + File.separator + file;
-            BellmanFord  bmFord
-                    = new BellmanFord(filePath, true);
-
-            if (!bmFord.calculateShortestPaths(0)) {
-                System.out.printf("Negative cycle detected in file %s. Abort Johnson\n", file);
+            if (checkpoint != null) {
+                if (checkpoint.startGraph(file, Checkpoint.fingerprint(new File(filePath)))) {
+                    System.out.printf("File %s changed since the checkpoint, starting it over\n", file);
+                }
+                if (checkpoint.isGraphDone(file)) {
+                    System.out.printf("File %s is done according to the checkpoint, skipping\n", file);
+                    continue;
+                }
+            }
+            /* shortest shortest path length in this file, over the sources run this time */
+            int fileShortest = Integer.MAX_VALUE;
+            if (offHeap) {
+                IntArrayAllocator allocator = IntArrayAllocator.offHeap();
+                if (mappedDir != null) {
+                    File graphDir = new File(mappedDir, file);
+                    Files.createDirectories(graphDir.toPath());
+                    allocator = IntArrayAllocator.mapped(graphDir);
+                }
+                CsrGraph graph = CsrGraph.fromFile(filePath, allocator);
+                if (!BellmanFord.reweight(graph, allocator)) {
+                    System.out.printf("Negative cycle detected in file %s. Abort Johnson\n", file);
+                } else if (numWorkers > 0) {
+                    fileShortest = distributedShortestShortest(graph, numWorkers, rangeSize, deltaOption, numThreads,
+                            mappedDir != null ? "mapped" : "offheap", workDirFor(checkpointFile, file));
+                } else {
+                    DeltaStepping deltaStepping = new DeltaStepping(graph, parseDelta(deltaOption, graph),
+                            executor, numThreads, IntArrayAllocator.offHeap());
+                    fileShortest = allPairsShortestShortest(file, graph.getNumVertices(),
+                            deltaStepping::calculateShortestPaths, checkpoint);
+                    deltaStepping.free();
+                }
+                /* direct memory isn't freed until a GC runs, which may not happen before the next file */
+                graph.free();
             } else {
-                Map<Integer, List<Integer>> edgeMappings = bmFord.getEdgeMappings();
-                Map<Edge, Integer> edgeCosts = bmFord.getEdgeToCost();
-                Map<Integer, Integer> johnsonWeights = bmFord.getShortestPathLengths();
-                int numVertices = bmFord.getNumVertices();
-
-                for (int i = 1; i <= numVertices; i++) {
-                    HeapDijkstra dijkstra
-                            = new HeapDijkstra(edgeMappings, edgeCosts, johnsonWeights, numVertices);
-                    int[] shortestPaths = dijkstra.calculateShortestPaths(i);
-                    for (int shortestPath : shortestPaths) {
-                        if (shortestPath < shortestShortest) {
-                            shortestShortest = shortestPath;
-                        }
+                BellmanFord  bmFord
+                        = new BellmanFord(filePath, true);
+
+                if (!bmFord.calculateShortestPaths(0)) {
+                    System.out.printf("Negative cycle detected in file %s. Abort Johnson\n", file);
+                } else {
+                    Map<Integer, List<Integer>> edgeMappings = bmFord.getEdgeMappings();
+                    Map<Edge, Integer> edgeCosts = bmFord.getEdgeToCost();
+                    Map<Integer, Integer> johnsonWeights = bmFord.getShortestPathLengths();
+                    int numVertices = bmFord.getNumVertices();
+                    if (numWorkers > 0) {
+                        CsrGraph graph = CsrGraph.fromMappings(edgeMappings, edgeCosts, johnsonWeights, numVertices);
+                        fileShortest = distributedShortestShortest(graph, numWorkers, rangeSize, deltaOption,
+                                numThreads, "heap", workDirFor(checkpointFile, file));
+                    } else if (executor != null) {
+                        CsrGraph graph = CsrGraph.fromMappings(edgeMappings, edgeCosts, johnsonWeights, numVertices);
+                        DeltaStepping deltaStepping
+                                = new DeltaStepping(graph, parseDelta(deltaOption, graph), executor, numThreads);
+                        fileShortest = allPairsShortestShortest(file, numVertices,
+                                deltaStepping::calculateShortestPaths, checkpoint);
+                    } else {
+                        fileShortest = allPairsShortestShortest(file, numVertices, source -> {
+                            HeapDijkstra dijkstra
+                                    = new HeapDijkstra(edgeMappings, edgeCosts, johnsonWeights, numVertices);
+                            return dijkstra.calculateShortestPaths(source);
+                        }, checkpoint);
                     }
                 }
             }
+            shortestShortest = Math.min(shortestShortest, fileShortest);
+            if (checkpoint != null) {
+                checkpoint.completeGraph(file, fileShortest);
+            }
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (checkpoint != null) {
+            /* also covers the sources and files finished by earlier runs */
+            shortestShortest = Math.min(shortestShortest, checkpoint.getShortestShortest());
+            checkpoint.close();
         }
         System.out.println("The shortest shortest in all three files is " + shortestShortest);
     }
+
+    /**
+     * Runs single source shortest paths from every vertex of a graph, skipping sources the
+     * checkpoint already has and recording the ones that finish
+     * @param file the graph file, identifies the graph in the checkpoint
+     * @param numVertices number of vertices in the graph
+     * @param shortestPathsFrom calculates the shortest path lengths from a source
+     * @param checkpoint where progress is recorded, or null
+     * @return the shortest shortest path length over the sources that were run
+     */
+    private static int allPairsShortestShortest(String file, int numVertices,
+                                                IntFunction<int[]> shortestPathsFrom, Checkpoint checkpoint) {
+        int shortestShortest = Integer.MAX_VALUE;
+        for (int i = 1; i <= numVertices; i++) {
+            if (checkpoint != null && checkpoint.isDone(file, i)) {
+                continue;
+            }
+            int sourceShortest = Integer.MAX_VALUE;
+            for (int shortestPath : shortestPathsFrom.apply(i)) {
+                if (shortestPath < sourceShortest) {
+                    sourceShortest = shortestPath;
+                }
+            }
+            if (checkpoint != null) {
+                checkpoint.complete(file, i, sourceShortest);
+            }
+            shortestShortest = Math.min(shortestShortest, sourceShortest);
+        }
+        return shortestShortest;
+    }
+
+    private static int parseDelta(String deltaOption, CsrGraph graph) {
+        return deltaOption.equals("auto") ? DeltaStepping.defaultDelta(graph) : Integer.parseInt(deltaOption);
+    }
+
+    /**
+     * Runs the all pairs phase of a reweighted graph on JohnsonWorker processes. The work
+     * directory is deleted once every range is done; when the run fails or is killed, a stable
+     * work directory keeps its finished ranges for the next run
+     * @param storageOption where the workers keep their arrays, see JohnsonWorker
+     * @param workDir the coordinator's work directory, or null for a temporary one
+     * @return the shortest shortest path length over all sources
+     */
+    private static int distributedShortestShortest(CsrGraph graph, int numWorkers, int rangeSize,
+                                                   String deltaOption, int numThreads, String storageOption,
+                                                   File workDir) throws IOException {
+        /* by default hand out many small ranges so a dead worker costs little */
+        int size = rangeSize > 0 ? rangeSize
+                : Math.max(1, (graph.getNumVertices() + DEFAULT_NUM_RANGES - 1) / DEFAULT_NUM_RANGES);
+        boolean temporary = workDir == null;
+        if (temporary) {
+            workDir = Files.createTempDirectory("johnson").toFile();
+        } else {
+            Files.createDirectories(workDir.toPath());
+        }
+        boolean completed = false;
+        try {
+            JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, numWorkers, size,
+                    deltaOption == null ? "auto" : deltaOption, Math.max(1, numThreads / numWorkers), storageOption);
+            int shortestShortest = coordinator.calculateShortestShortest();
+            completed = true;
+            return shortestShortest;
+        } finally {
+            if (completed || temporary) {
+                deleteRecursively(workDir);
+            }
+        }
+    }
+
+    /**
+     * Distributed runs record finished ranges in their work directory rather than in the
+     * checkpoint, so with a checkpoint the work directory has to be found again after a restart
+     * @return a work directory next to the checkpoint file for the graph file, or null without a checkpoint
+     */
+    private static File workDirFor(File checkpointFile, String file) {
+        if (checkpointFile == null) {
+            return null;
+        }
+        return new File(checkpointFile.getPath() + "." + file + ".work");
+    }
+
+    /**
+     * Deletes a directory along with everything in it, children before their parents
+     */
+    private static void deleteRecursively(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
 }
@@ -0,0 +1,309 @@
+package main.java;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Coordinates the all pairs phase of Johnson's algorithm across JohnsonWorker processes
+ * on the local machine. The reweighted graph is written once to a snapshot in the shared
+ * work directory, and the sources are split into ranges that workers claim as task files.
+ *
+ * Layout of the work directory:
+ *   graph.snapshot          the reweighted graph, see CsrGraph.write()
+ *   run.info                fingerprint of the snapshot and the range size the results belong to
+ *   pending/first-last      ranges nobody has claimed yet
+ *   claimed/first-last.id   ranges claimed by the worker with that id, ids are unique per run
+ *   results/first-last      shortest shortest path length of a finished range
+ *   storage-id/             arrays of the worker with that id, when workers use mapped storage
+ *
+ * When a worker dies, the ranges it had claimed are moved back to pending and a
+ * replacement worker is started. Workers are destroyed when the coordinator exits, and
+ * watch the coordinator's pid to exit by themselves if it is killed.
+ *
+ * A work directory left behind by a run that was killed can be handed to a new coordinator
+ * for the same graph and range size: ranges that already have a result are not run again.
+ * Results left by a run over another graph or with another range size are thrown away.
+ */
+public class JohnsonCoordinator {
+    static final String SNAPSHOT_FILE = "graph.snapshot";
+    static final String PENDING_DIR = "pending";
+    static final String CLAIMED_DIR = "claimed";
+    static final String RESULTS_DIR = "results";
+    static final String RUN_INFO_FILE = "run.info";
+    /* how often the coordinator checks on results and workers, in milliseconds */
+    private static final long POLL_INTERVAL = 100;
+
+    private CsrGraph graph;
+    private File workDir;
+    private int numWorkers;
+    private int rangeSize;
+    /* delta option passed to the workers, either a number or "auto" */
+    private String deltaOption;
+    /* size of each worker's delta-stepping pool */
+    private int threadsPerWorker;
+    /* storage option passed to the workers, "heap", "offheap" or "mapped" */
+    private String storageOption;
+    /* how many times dead workers may be replaced before giving up */
+    private int maxRestarts;
+    /* class whose main() runs in each worker process */
+    private String workerMainClass = JohnsonWorker.class.getName();
+
+    /**
+     * Constructs a JohnsonCoordinator for a reweighted graph whose workers keep their copy
+     * of the graph on the heap
+     * @param graph the graph after Bellman-Ford reweighting
+     * @param workDir directory shared with the workers, may hold the results of an earlier run
+     * @param numWorkers number of worker processes to run at once
+     * @param rangeSize number of sources in each range
+     * @param deltaOption delta-stepping bucket width for the workers, a number or "auto"
+     * @param threadsPerWorker size of each worker's delta-stepping pool
+     */
+    public JohnsonCoordinator(CsrGraph graph, File workDir, int numWorkers, int rangeSize,
+                              String deltaOption, int threadsPerWorker) {
+        this(graph, workDir, numWorkers, rangeSize, deltaOption, threadsPerWorker, "heap");
+    }
+
+    /**
+     * Constructs a JohnsonCoordinator for a reweighted graph
+     * @param graph the graph after Bellman-Ford reweighting
+     * @param workDir directory shared with the workers, may hold the results of an earlier run
+     * @param numWorkers number of worker processes to run at once
+     * @param rangeSize number of sources in each range
+     * @param deltaOption delta-stepping bucket width for the workers, a number or "auto"
+     * @param threadsPerWorker size of each worker's delta-stepping pool
+     * @param storageOption where workers keep the graph and their scratch arrays: "heap",
+     *                      "offheap" or "mapped", see JohnsonWorker
+     */
+    public JohnsonCoordinator(CsrGraph graph, File workDir, int numWorkers, int rangeSize,
+                              String deltaOption, int threadsPerWorker, String storageOption) {
+        this.graph = graph;
+        this.workDir = workDir;
+        this.numWorkers = numWorkers;
+        this.rangeSize = Math.max(1, rangeSize);
+        this.deltaOption = deltaOption;
+        this.threadsPerWorker = threadsPerWorker;
+        this.storageOption = storageOption;
+        this.maxRestarts = numWorkers;
+    }
+
+    /**
+     * @param maxRestarts how many times dead workers may be replaced before giving up,
+     *                    defaults to the number of workers
+     */
+    public void setMaxRestarts(int maxRestarts) {
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * Runs another class in the worker processes instead of JohnsonWorker, used to test how
+     * dead workers are handled
+     * @param workerMainClass name of a class whose main() takes the same arguments as JohnsonWorker's
+     */
+    public void setWorkerMainClass(String workerMainClass) {
+        this.workerMainClass = workerMainClass;
+    }
+
+    /**
+     * Writes the snapshot and task files, runs the workers until every range has a result
+     * and reduces the results. Ranges whose result is already in the work directory are skipped
+     * @return the shortest shortest path length over all sources
+     * @throws IOException thrown if the work directory couldn't be set up or read
+     */
+    public int calculateShortestShortest() throws IOException {
+        File snapshot = new File(workDir, SNAPSHOT_FILE);
+        Path pendingDir = Files.createDirectories(new File(workDir, PENDING_DIR).toPath());
+        Path claimedDir = Files.createDirectories(new File(workDir, CLAIMED_DIR).toPath());
+        Path resultsDir = Files.createDirectories(new File(workDir, RESULTS_DIR).toPath());
+        /* tasks left over from an earlier run are recreated below */
+        deleteFiles(pendingDir);
+        deleteFiles(claimedDir);
+
+        /* workers start reading the snapshot as soon as it exists, so it has to appear atomically */
+        File tempSnapshot = new File(workDir, SNAPSHOT_FILE + ".tmp");
+        graph.write(tempSnapshot);
+        /* results are only worth reusing for the same graph split into the same ranges */
+        String runInfo = Checkpoint.fingerprint(tempSnapshot) + " " + rangeSize;
+        File runInfoFile = new File(workDir, RUN_INFO_FILE);
+        String previousRunInfo = runInfoFile.exists() ? new String(Files.readAllBytes(runInfoFile.toPath())) : null;
+        if (!runInfo.equals(previousRunInfo)) {
+            String[] results = resultsDir.toFile().list();
+            if (results != null && results.length > 0) {
+                System.out.printf("Results in %s are for another graph or range size, starting over\n", workDir);
+            }
+            deleteFiles(resultsDir);
+            File tempRunInfo = new File(workDir, RUN_INFO_FILE + ".tmp");
+            Files.write(tempRunInfo.toPath(), runInfo.getBytes());
+            Files.move(tempRunInfo.toPath(), runInfoFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tempSnapshot.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        List<String> ranges = new ArrayList<>();
+        int numReused = 0;
+        for (int first = 1; first <= graph.getNumVertices(); first += rangeSize) {
+            int last = Math.min(graph.getNumVertices(), first + rangeSize - 1);
+            String range = first + "-" + last;
+            ranges.add(range);
+            if (Files.exists(resultsDir.resolve(range))) {
+                numReused++;
+            } else {
+                Files.createFile(pendingDir.resolve(range));
+            }
+        }
+        if (numReused > 0) {
+            System.out.printf("Reusing the results of %d of %d range(s) in %s\n", numReused, ranges.size(), workDir);
+        }
+
+        /* a fresh prefix keeps ids apart from any worker a killed earlier run may have left behind */
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        List<WorkerProcess> workers = new ArrayList<>();
+        /* every process ever started, for the shutdown hook, which may run while workers changes */
+        List<Process> started = new CopyOnWriteArrayList<>();
+        Thread shutdownHook = new Thread(() -> {
+            for (Process process : started) {
+                process.destroyForcibly();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        int nextWorkerId = 0;
+        int restartsLeft = maxRestarts;
+        try {
+            while (countFiles(resultsDir, ranges) < ranges.size()) {
+                /* reap dead workers and hand their unfinished ranges back out */
+                Iterator<WorkerProcess> iterator = workers.iterator();
+                while (iterator.hasNext()) {
+                    WorkerProcess worker = iterator.next();
+                    if (!worker.process.isAlive()) {
+                        iterator.remove();
+                        int requeued = requeueClaims(claimedDir, pendingDir, worker.id);
+                        if (worker.process.exitValue() != 0) {
+                            System.out.printf("Worker %s exited with %d, requeued %d range(s)\n",
+                                    worker.id, worker.process.exitValue(), requeued);
+                        }
+                    }
+                }
+                String[] pending = pendingDir.toFile().list();
+                boolean hasPending = pending != null && pending.length > 0;
+                while (hasPending && workers.size() < numWorkers) {
+                    if (nextWorkerId >= numWorkers) {
+                        if (restartsLeft == 0) {
+                            break;
+                        }
+                        restartsLeft--;
+                    }
+                    WorkerProcess worker = startWorker(runId + "-" + nextWorkerId++);
+                    started.add(worker.process);
+                    workers.add(worker);
+                }
+                if (workers.isEmpty() && hasPending) {
+                    throw new IllegalStateException("All workers died, giving up after "
+                            + maxRestarts + " restart(s)");
+                }
+                try {
+                    Thread.sleep(POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting on workers", e);
+                }
+            }
+        } finally {
+            for (WorkerProcess worker : workers) {
+                worker.process.destroy();
+            }
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                /* already shutting down, the hook destroys the workers */
+            }
+        }
+
+        int shortestShortest = Integer.MAX_VALUE;
+        for (String range : ranges) {
+            String result = new String(Files.readAllBytes(resultsDir.resolve(range))).trim();
+            shortestShortest = Math.min(shortestShortest, Integer.parseInt(result));
+        }
+        return shortestShortest;
+    }
+
+    /**
+     * Starts a worker JVM using the same java binary and classpath as this one
+     */
+    private WorkerProcess startWorker(String id) throws IOException {
+        String javaBinary = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(javaBinary, "-cp", System.getProperty("java.class.path"),
+                workerMainClass, workDir.getAbsolutePath(), id, deltaOption,
+                Integer.toString(threadsPerWorker), storageOption,
+                Long.toString(ProcessHandle.current().pid()));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(workDir, "worker-" + id + ".log"));
+        return new WorkerProcess(id, builder.start());
+    }
+
+    /**
+     * Moves the ranges claimed by a worker back to pending, unless their result made it out
+     * @return number of ranges moved back
+     */
+    private int requeueClaims(Path claimedDir, Path pendingDir, String workerId) throws IOException {
+        String[] claimed = claimedDir.toFile().list();
+        if (claimed == null) {
+            return 0;
+        }
+        int requeued = 0;
+        String suffix = "." + workerId;
+        for (String claim : claimed) {
+            if (!claim.endsWith(suffix)) {
+                continue;
+            }
+            String range = claim.substring(0, claim.length() - suffix.length());
+            if (new File(workDir, RESULTS_DIR + File.separator + range).exists()) {
+                Files.deleteIfExists(claimedDir.resolve(claim));
+            } else {
+                try {
+                    Files.move(claimedDir.resolve(claim), pendingDir.resolve(range), StandardCopyOption.ATOMIC_MOVE);
+                    requeued++;
+                } catch (NoSuchFileException e) {
+                    /* the worker finished it after all */
+                }
+            }
+        }
+        return requeued;
+    }
+
+    private void deleteFiles(Path dir) throws IOException {
+        String[] names = dir.toFile().list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+    }
+
+    private int countFiles(Path dir, List<String> names) {
+        int count = 0;
+        for (String name : names) {
+            if (Files.exists(dir.resolve(name))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Pairs a worker process with the id it tags its claims with
+     */
+    private static class WorkerProcess {
+        String id;
+        Process process;
+
+        WorkerProcess(String id, Process process) {
+            this.id = id;
+            this.process = process;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package main.java;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Worker process for distributed Johnson. Loads the reweighted graph snapshot written by
+ * JohnsonCoordinator, then keeps claiming pending source ranges from the shared work directory
+ * until none are left. For each range it writes the shortest path length found over every
+ * source in the range to the results directory.
+ *
+ * The storage argument decides where the graph and the delta-stepping scratch arrays live:
+ * "heap", "offheap" for direct memory, or "mapped" for files in a storage-id directory
+ * of the work directory
+ *
+ * When given the coordinator's pid the worker exits as soon as the coordinator is gone, so a
+ * coordinator that was killed doesn't leave workers behind that keep claiming ranges
+ *
+ * Usage: JohnsonWorker work_directory worker_id delta threads [storage [coordinator_pid]]
+ */
+public class JohnsonWorker {
+
+    public static void main(String[] args) throws IOException {
+        File workDir = new File(args[0]);
+        String workerId = args[1];
+        String deltaOption = args[2];
+        int numThreads = Integer.parseInt(args[3]);
+        String storageOption = args.length > 4 ? args[4] : "heap";
+        if (args.length > 5) {
+            exitWithCoordinator(Long.parseLong(args[5]));
+        }
+
+        IntArrayAllocator allocator = IntArrayAllocator.heap();
+        if (storageOption.equals("offheap")) {
+            allocator = IntArrayAllocator.offHeap();
+        } else if (storageOption.equals("mapped")) {
+            File storageDir = new File(workDir, "storage-" + workerId);
+            Files.createDirectories(storageDir.toPath());
+            allocator = IntArrayAllocator.mapped(storageDir);
+        }
+        CsrGraph graph = CsrGraph.read(new File(workDir, JohnsonCoordinator.SNAPSHOT_FILE), allocator);
+        int delta = deltaOption.equals("auto") ? DeltaStepping.defaultDelta(graph) : Integer.parseInt(deltaOption);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            DeltaStepping deltaStepping = new DeltaStepping(graph, delta, executor, numThreads, allocator);
+            Path pendingDir = new File(workDir, JohnsonCoordinator.PENDING_DIR).toPath();
+            Path claimedDir = new File(workDir, JohnsonCoordinator.CLAIMED_DIR).toPath();
+            Path resultsDir = new File(workDir, JohnsonCoordinator.RESULTS_DIR).toPath();
+
+            String range;
+            while ((range = claimRange(pendingDir, claimedDir, workerId)) != null) {
+                String[] bounds = range.split("-");
+                int shortestShortest = shortestShortest(deltaStepping,
+                        Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+
+                /* write then rename so the coordinator never sees a half written result */
+                Path tempResult = resultsDir.resolve(range + "." + workerId + ".tmp");
+                Files.write(tempResult, Integer.toString(shortestShortest).getBytes());
+                Files.move(tempResult, resultsDir.resolve(range), StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(claimedDir.resolve(range + "." + workerId));
+            }
+            deltaStepping.free();
+            graph.free();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Halts this worker once the coordinator process has exited, or right away if it already has
+     * @param coordinatorPid pid of the coordinator that started this worker
+     */
+    private static void exitWithCoordinator(long coordinatorPid) {
+        Optional<ProcessHandle> coordinator = ProcessHandle.of(coordinatorPid);
+        if (!coordinator.isPresent()) {
+            System.out.printf("Coordinator %d is gone, exiting\n", coordinatorPid);
+            Runtime.getRuntime().halt(1);
+        }
+        coordinator.get().onExit().thenRun(() -> {
+            System.out.printf("Coordinator %d exited, exiting\n", coordinatorPid);
+            Runtime.getRuntime().halt(1);
+        });
+    }
+
+    /**
+     * Claims a pending range by atomically moving its task file into the claimed directory,
+     * tagged with the worker id. Only one worker can win the move for a given range
+     * @return the claimed range as "first-last", or null if there are no pending ranges left
+     */
+    private static String claimRange(Path pendingDir, Path claimedDir, String workerId) throws IOException {
+        String[] pending = pendingDir.toFile().list();
+        if (pending == null) {
+            return null;
+        }
+        for (String range : pending) {
+            try {
+                Files.move(pendingDir.resolve(range), claimedDir.resolve(range + "." + workerId),
+                        StandardCopyOption.ATOMIC_MOVE);
+                return range;
+            } catch (NoSuchFileException e) {
+                /* another worker claimed it first */
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs single source shortest paths from every source in a range
+     * @param deltaStepping the shortest path engine
+     * @param firstSource first source of the range
+     * @param lastSource last source of the range, inclusive
+     * @return the shortest shortest path length over all sources in the range
+     */
+    static int shortestShortest(DeltaStepping deltaStepping, int firstSource, int lastSource) {
+        int shortestShortest = Integer.MAX_VALUE;
+        for (int i = firstSource; i <= lastSource; i++) {
+            int[] shortestPaths = deltaStepping.calculateShortestPaths(i);
+            for (int shortestPath : shortestPaths) {
+                if (shortestPath < shortestShortest) {
+                    shortestShortest = shortestPath;
+                }
+            }
+        }
+        return shortestShortest;
+    }
+}
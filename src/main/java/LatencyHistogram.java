@@ -0,0 +1,67 @@
+package main.java;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of request latencies with power of two buckets. Bucket i counts the
+ * requests that took less than 2^i microseconds (and at least 2^(i - 1)), bucket 0 the ones
+ * under a microsecond
+ */
+public class LatencyHistogram {
+    public static final int NUM_BUCKETS = 40;
+
+    private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    /**
+     * Records one request
+     * @param nanos how long the request took, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return a copy of the count in every bucket
+     */
+    public long[] getCounts() {
+        long[] copy = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @return total number of requests recorded
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the latency under which a fraction of the requests completed
+     * @param counts bucket counts, as returned by getCounts()
+     * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the upper bound in microseconds, or 0 if nothing was recorded
+     */
+    public static long percentileMicros(long[] counts, double fraction) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > 0 && seen >= fraction * total) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,164 @@
+package main.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * IntArray stored outside the Java heap, either in direct buffers or in a memory mapped file.
+ * A single ByteBuffer is limited to 2GB, so the elements are split over chunks of 2^28 ints
+ * (1GB each). The garbage collector never has to scan or copy the elements themselves.
+ *
+ * Direct buffers only count against -XX:MaxDirectMemorySize, which defaults to the maximum heap
+ * size, so arrays bigger than the heap need that flag raised or have to be mapped instead.
+ * Their memory only goes back when the garbage collector runs a buffer's cleaner, which may be
+ * long after the array is dropped, so owners call free() once they are done with an array
+ */
+public class OffHeapIntArray implements IntArray {
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /* views a direct buffer as ints, the only way to get atomic updates on buffer memory */
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    /* sun.misc.Unsafe.invokeCleaner, frees a direct or mapped buffer right away. null if unavailable */
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private ByteBuffer[] chunks;
+    private int length;
+
+    private OffHeapIntArray(ByteBuffer[] chunks, int length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * Allocates a zeroed array in direct memory
+     * @param length number of elements
+     * @return the new array
+     */
+    public static OffHeapIntArray allocate(int length) {
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(length)];
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = ByteBuffer.allocateDirect(chunkBytes(length, i)).order(ByteOrder.nativeOrder());
+            }
+        } catch (OutOfMemoryError e) {
+            new OffHeapIntArray(chunks, length).free();
+            OutOfMemoryError error = new OutOfMemoryError("Out of direct memory for " + length
+                    + " ints, raise -XX:MaxDirectMemorySize or use mapped storage");
+            error.initCause(e);
+            throw error;
+        }
+        return new OffHeapIntArray(chunks, length);
+    }
+
+    /**
+     * Maps an array onto a file, creating or resizing the file as needed. Whatever the file
+     * already holds becomes the initial contents of the array
+     * @param file the backing file
+     * @param length number of elements
+     * @return the mapped array
+     * @throws IOException thrown if the file couldn't be opened or mapped
+     */
+    public static OffHeapIntArray map(File file, int length) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(length)];
+        /* the mappings stay valid after the channel is closed */
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength((long) length * Integer.BYTES);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < chunks.length; i++) {
+                long position = (long) i * CHUNK_SIZE * Integer.BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes(length, i))
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+        return new OffHeapIntArray(chunks, length);
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            /* the garbage collector still frees the buffers eventually */
+            return null;
+        }
+    }
+
+    private static int numChunks(int length) {
+        return Math.max(1, (int) (((long) length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT));
+    }
+
+    private static int chunkBytes(int length, int chunk) {
+        long elements = Math.min(CHUNK_SIZE, (long) length - (long) chunk * CHUNK_SIZE);
+        return (int) Math.max(0, elements) * Integer.BYTES;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int get(int index) {
+        return chunks[index >>> CHUNK_SHIFT].getInt((index & CHUNK_MASK) << 2);
+    }
+
+    @Override
+    public void set(int index, int value) {
+        chunks[index >>> CHUNK_SHIFT].putInt((index & CHUNK_MASK) << 2, value);
+    }
+
+    @Override
+    public int getVolatile(int index) {
+        return (int) INTS.getVolatile(chunks[index >>> CHUNK_SHIFT], (index & CHUNK_MASK) << 2);
+    }
+
+    @Override
+    public boolean compareAndSet(int index, int expected, int value) {
+        return INTS.compareAndSet(chunks[index >>> CHUNK_SHIFT], (index & CHUNK_MASK) << 2, expected, value);
+    }
+
+    @Override
+    public void fill(int value) {
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < chunk.capacity(); offset += Integer.BYTES) {
+                chunk.putInt(offset, value);
+            }
+        }
+    }
+
+    /**
+     * Frees the direct memory or unmaps the file. A mapped file keeps what was written to it
+     */
+    @Override
+    public void free() {
+        ByteBuffer[] freed = chunks;
+        /* later accesses fail with a NullPointerException rather than touching freed memory */
+        chunks = null;
+        if (freed == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        for (ByteBuffer chunk : freed) {
+            if (chunk != null) {
+                try {
+                    INVOKE_CLEANER.invokeExact(chunk);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Couldn't free a buffer", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package main.java;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client for QueryServer's binary protocol. Not safe for use by several threads at once,
+ * open one client per thread instead
+ */
+public class QueryClient implements Closeable {
+    /* most requests distances() has sent but not read the response of */
+    private static final int MAX_OUTSTANDING = 64;
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private int nextRequestId;
+    /* id of the response most recently read */
+    private int lastResponseId;
+
+    /**
+     * Connects to a QueryServer
+     * @param host the server's host, usually localhost
+     * @param port the server's port
+     * @throws IOException thrown if the connection couldn't be made
+     */
+    public QueryClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * @return the shortest path length from source to target, Integer.MAX_VALUE if unreachable
+     */
+    public int distance(int source, int target) throws IOException {
+        writeFrame(nextRequestId++, QueryServer.DISTANCE, source, target);
+        out.flush();
+        return readResponse().readInt();
+    }
+
+    /**
+     * Pipelines the distance queries, keeping up to MAX_OUTSTANDING of them unanswered while
+     * reading responses, so the server works on them concurrently and the round trips overlap.
+     * Sending everything before reading would deadlock once both sides' socket buffers fill up
+     * @param sources source of each query
+     * @param targets target of each query
+     * @return the shortest path length of each query, in the same order
+     */
+    public int[] distances(int[] sources, int[] targets) throws IOException {
+        int firstId = nextRequestId;
+        int[] lengths = new int[sources.length];
+        int numSent = 0;
+        for (int numReceived = 0; numReceived < sources.length; numReceived++) {
+            if (numSent < sources.length && numSent - numReceived <= MAX_OUTSTANDING / 2) {
+                /* top the window up in batches rather than a frame per response */
+                while (numSent < sources.length && numSent - numReceived < MAX_OUTSTANDING) {
+                    writeFrame(nextRequestId++, QueryServer.DISTANCE, sources[numSent], targets[numSent]);
+                    numSent++;
+                }
+                out.flush();
+            }
+            DataInputStream response = readResponse();
+            /* responses arrive in whatever order the server finishes them */
+            lengths[lastResponseId - firstId] = response.readInt();
+        }
+        return lengths;
+    }
+
+    /**
+     * @return shortest path lengths from the source indexed by vertex, index 0 is unused
+     */
+    public int[] row(int source) throws IOException {
+        writeFrame(nextRequestId++, QueryServer.ROW, source);
+        out.flush();
+        DataInputStream response = readResponse();
+        int[] lengths = new int[response.readInt() + 1];
+        for (int i = 1; i < lengths.length; i++) {
+            lengths[i] = response.readInt();
+        }
+        return lengths;
+    }
+
+    /**
+     * @return up to k {vertex, length} pairs for the vertices closest to the source, closest first
+     */
+    public int[][] nearest(int source, int k) throws IOException {
+        writeFrame(nextRequestId++, QueryServer.NEAREST, source, k);
+        out.flush();
+        DataInputStream response = readResponse();
+        int[][] nearest = new int[response.readInt()][2];
+        for (int[] pair : nearest) {
+            pair[0] = response.readInt();
+            pair[1] = response.readInt();
+        }
+        return nearest;
+    }
+
+    /**
+     * @return the latency histogram bucket counts of each endpoint, see LatencyHistogram
+     */
+    public Map<String, long[]> stats() throws IOException {
+        writeFrame(nextRequestId++, QueryServer.STATS);
+        out.flush();
+        DataInputStream response = readResponse();
+        Map<String, long[]> stats = new LinkedHashMap<>();
+        int numEndpoints = response.readInt();
+        for (int i = 0; i < numEndpoints; i++) {
+            String name = response.readUTF();
+            long[] counts = new long[response.readInt()];
+            for (int j = 0; j < counts.length; j++) {
+                counts[j] = response.readLong();
+            }
+            stats.put(name, counts);
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Buffers a request frame, every operand of every request is an int
+     */
+    private void writeFrame(int requestId, byte opcode, int... operands) throws IOException {
+        out.writeInt(Integer.BYTES + 1 + operands.length * Integer.BYTES);
+        out.writeInt(requestId);
+        out.writeByte(opcode);
+        for (int operand : operands) {
+            out.writeInt(operand);
+        }
+    }
+
+    /**
+     * Reads the next response frame
+     * @return the result part of the frame
+     * @throws IllegalArgumentException thrown if the server rejected the request
+     * @throws IllegalStateException thrown if the server failed to answer it
+     */
+    private DataInputStream readResponse() throws IOException {
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        DataInputStream response = new DataInputStream(new ByteArrayInputStream(frame));
+        lastResponseId = response.readInt();
+        byte status = response.readByte();
+        if (status == QueryServer.BAD_REQUEST) {
+            throw new IllegalArgumentException(response.readUTF());
+        } else if (status != QueryServer.OK) {
+            throw new IllegalStateException(response.readUTF());
+        }
+        return response;
+    }
+}
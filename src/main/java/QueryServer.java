@@ -0,0 +1,503 @@
+package main.java;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Long running shortest path server. The graph is loaded and reweighted once, then the
+ * reweighted graph and its Johnson potentials stay resident and queries are answered with
+ * delta-stepping over local TCP. Distance queries use A* with landmarks instead when the
+ * server is built with an AltIndex.
+ *
+ * Every message is a frame: a 4 byte big-endian length followed by that many bytes.
+ * A request frame holds: int request_id, byte opcode, then the operands
+ *   DISTANCE  int source, int target
+ *   ROW       int source
+ *   NEAREST   int source, int k
+ *   STATS     nothing
+ * A response frame holds: int request_id, byte status, then the result
+ *   DISTANCE  int length (Integer.MAX_VALUE if unreachable)
+ *   ROW       int count, then count lengths for vertices 1..count
+ *   NEAREST   int count, then count (int vertex, int length) pairs, closest first
+ *   STATS     int endpoints, then per endpoint: UTF name, int buckets, long count per bucket
+ *   non OK    UTF error message
+ *
+ * Requests are handled concurrently, so a client may pipeline several requests on one
+ * connection without waiting; responses can come back in any order and are matched by id.
+ * At most numThreads requests are answered at once across all connections, further requests
+ * are left unread until one finishes, which pushes back on clients through TCP. Each connection
+ * writes its responses from a task of its own and stops reading once 64 of its responses are
+ * waiting to be written, so a client that doesn't read its responses only stalls itself
+ */
+public class QueryServer implements Closeable {
+    static final byte DISTANCE = 1;
+    static final byte ROW = 2;
+    static final byte NEAREST = 3;
+    static final byte STATS = 4;
+
+    static final byte OK = 0;
+    static final byte BAD_REQUEST = 1;
+    static final byte ERROR = 2;
+
+    /* requests are tiny, anything bigger is a broken client */
+    private static final int MAX_REQUEST_LENGTH = 1024;
+    /* responses a connection may have answered but not yet written, beyond that its requests are left unread */
+    private static final int MAX_UNWRITTEN_RESPONSES = 64;
+    /* tells a connection's writer that no more responses are coming */
+    private static final byte[] END_OF_RESPONSES = new byte[0];
+
+    private CsrGraph graph;
+    private DeltaStepping deltaStepping;
+    /* landmark index for distance queries, or null to use delta-stepping */
+    private AltIndex altIndex;
+    /* pool the delta-stepping relaxations run on */
+    private ExecutorService relaxationExecutor;
+    /* runs connections and requests, one thread per task */
+    private ExecutorService requestExecutor;
+    /* caps the requests being answered at once, and with them the threads and scratch arrays in use */
+    private Semaphore requestPermits;
+    private ServerSocket serverSocket;
+    /* latency of each endpoint, keyed by opcode */
+    private Map<Byte, LatencyHistogram> histograms;
+    private Map<Byte, String> endpointNames;
+
+    /**
+     * Constructs a QueryServer over a reweighted graph
+     * @param graph the graph after Bellman-Ford reweighting
+     * @param delta delta-stepping bucket width
+     * @param numThreads size of the delta-stepping pool
+     */
+    public QueryServer(CsrGraph graph, int delta, int numThreads) {
+        this(graph, delta, numThreads, 0, AltIndex.LandmarkSelection.FARTHEST);
+    }
+
+    /**
+     * Constructs a QueryServer over a reweighted graph that answers distance queries with ALT
+     * @param graph the graph after Bellman-Ford reweighting
+     * @param delta delta-stepping bucket width
+     * @param numThreads size of the delta-stepping pool
+     * @param numLandmarks number of ALT landmarks, 0 to answer distance queries with delta-stepping
+     * @param selection how the landmarks are picked
+     */
+    public QueryServer(CsrGraph graph, int delta, int numThreads, int numLandmarks,
+                       AltIndex.LandmarkSelection selection) {
+        this.graph = graph;
+        this.relaxationExecutor = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int maxInFlight = Math.max(1, numThreads);
+        this.deltaStepping = new DeltaStepping(graph, delta, relaxationExecutor, numThreads,
+                IntArrayAllocator.heap(), maxInFlight);
+        if (numLandmarks > 0) {
+            try {
+                this.altIndex = AltIndex.build(graph, numLandmarks, selection, delta, relaxationExecutor, numThreads,
+                        IntArrayAllocator.heap(), maxInFlight);
+            } catch (IOException e) {
+                /* the heap allocator doesn't do I/O */
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.requestExecutor = newRequestExecutor();
+        this.requestPermits = new Semaphore(maxInFlight);
+        this.histograms = new LinkedHashMap<>();
+        this.endpointNames = new LinkedHashMap<>();
+        addEndpoint(DISTANCE, "distance");
+        addEndpoint(ROW, "row");
+        addEndpoint(NEAREST, "nearest");
+        addEndpoint(STATS, "stats");
+    }
+
+    private void addEndpoint(byte opcode, String name) {
+        histograms.put(opcode, new LatencyHistogram());
+        endpointNames.put(opcode, name);
+    }
+
+    /**
+     * Uses a virtual thread per task when the JVM has them (Java 21+), since connections and
+     * requests spend most of their time blocked. Falls back to a cached pool of daemon threads
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface
+     * @param port the port to listen on, 0 picks a free one
+     * @throws IOException thrown if the port couldn't be bound
+     */
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptThread = new Thread(this::acceptConnections, "query-server-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the latency histogram of each endpoint, keyed by endpoint name
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        Map<String, LatencyHistogram> byName = new LinkedHashMap<>();
+        for (Map.Entry<Byte, LatencyHistogram> entry : histograms.entrySet()) {
+            byName.put(endpointNames.get(entry.getKey()), entry.getValue());
+        }
+        return byName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        requestExecutor.shutdownNow();
+        relaxationExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                requestExecutor.execute(() -> serveConnection(socket));
+            } catch (SocketException e) {
+                /* the server socket was closed */
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads request frames off a connection and hands each one to its own task, so the next
+     * request can be read while earlier ones are still being answered. Responses are written by
+     * a writer task of the connection's own. Once the client stops sending, the requests still
+     * in flight are answered before the connection is closed
+     */
+    private void serveConnection(Socket socket) {
+        /* each permit is room for one response that hasn't been written yet */
+        Semaphore responseSlots = new Semaphore(MAX_UNWRITTEN_RESPONSES);
+        BlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            Future<?> writer = requestExecutor.submit(() -> writeResponses(connection, out, responses, responseSlots));
+            try {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length < 5 || length > MAX_REQUEST_LENGTH) {
+                        /* can't find the next frame boundary, give up on the connection */
+                        break;
+                    }
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    /* a client that doesn't read its responses stops being read from, other connections carry on */
+                    responseSlots.acquire();
+                    if (connection.isClosed()) {
+                        break;
+                    }
+                    /* waits here while the server is busy, so the client can't queue up unbounded work */
+                    requestPermits.acquire();
+                    try {
+                        requestExecutor.execute(() -> {
+                            byte[] response = null;
+                            try {
+                                response = respond(frame);
+                            } catch (IOException | RuntimeException | Error e) {
+                                e.printStackTrace();
+                            } finally {
+                                /* the answer is done, writing it out is up to this connection alone */
+                                requestPermits.release();
+                            }
+                            if (response != null) {
+                                responses.add(response);
+                            } else {
+                                abandon(connection, responseSlots);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        /* the server is being closed */
+                        requestPermits.release();
+                        abandon(connection, responseSlots);
+                        break;
+                    }
+                }
+                /* every slot is back once every response has been written */
+                responseSlots.acquire(MAX_UNWRITTEN_RESPONSES);
+            } finally {
+                responses.add(END_OF_RESPONSES);
+                writer.get();
+            }
+        } catch (IOException | ExecutionException e) {
+            /* the client went away */
+        } catch (RejectedExecutionException e) {
+            /* the server was closed before the connection's writer could start */
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a connection's response frames in the order they were answered, flushing whenever
+     * no further response is ready, until END_OF_RESPONSES comes up
+     */
+    private static void writeResponses(Socket connection, DataOutputStream out, BlockingQueue<byte[]> responses,
+                                       Semaphore responseSlots) {
+        try {
+            while (true) {
+                byte[] response = responses.take();
+                if (response == END_OF_RESPONSES) {
+                    out.flush();
+                    return;
+                }
+                out.writeInt(response.length);
+                out.write(response);
+                responseSlots.release();
+                if (responses.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            /* the client went away */
+            abandon(connection, responseSlots);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(connection, responseSlots);
+        }
+    }
+
+    /**
+     * Closes a connection that can't be answered properly, so the client never waits on a
+     * response that will not come, and wakes its reader if it is waiting for a response slot
+     */
+    private static void abandon(Socket connection, Semaphore responseSlots) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            /* the client went away */
+        }
+        responseSlots.release(MAX_UNWRITTEN_RESPONSES);
+    }
+
+    /**
+     * Answers one request frame. Every request gets a response, even when answering it
+     * throws an Error
+     * @return the response frame, without its length
+     */
+    private byte[] respond(byte[] frame) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        DataOutputStream responseOut = new DataOutputStream(response);
+        DataInputStream request = new DataInputStream(new ByteArrayInputStream(frame));
+        int requestId = request.readInt();
+        byte opcode = request.readByte();
+        responseOut.writeInt(requestId);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            answer(opcode, request, new DataOutputStream(result));
+            responseOut.writeByte(OK);
+            result.writeTo(responseOut);
+        } catch (IllegalArgumentException | EOFException e) {
+            responseOut.writeByte(BAD_REQUEST);
+            responseOut.writeUTF(String.valueOf(e.getMessage()));
+        } catch (RuntimeException | Error e) {
+            responseOut.writeByte(ERROR);
+            responseOut.writeUTF(String.valueOf(e));
+        }
+        responseOut.flush();
+        /* recorded before the response goes out, so a client sees its own requests in the stats */
+        LatencyHistogram histogram = histograms.get(opcode);
+        if (histogram != null) {
+            histogram.record(System.nanoTime() - start);
+        }
+        return response.toByteArray();
+    }
+
+    /**
+     * Computes the result of one request
+     * @throws IllegalArgumentException thrown if the opcode or an operand is invalid
+     */
+    private void answer(byte opcode, DataInputStream request, DataOutputStream result) throws IOException {
+        switch (opcode) {
+            case DISTANCE: {
+                int source = checkVertex(request.readInt());
+                int target = checkVertex(request.readInt());
+                if (altIndex != null) {
+                    result.writeInt(altIndex.calculateShortestPath(source, target));
+                } else {
+                    result.writeInt(deltaStepping.calculateShortestPath(source, target));
+                }
+                break;
+            }
+            case ROW: {
+                int[] shortestPaths = deltaStepping.calculateShortestPaths(checkVertex(request.readInt()));
+                result.writeInt(graph.getNumVertices());
+                for (int i = 1; i < shortestPaths.length; i++) {
+                    result.writeInt(shortestPaths[i]);
+                }
+                break;
+            }
+            case NEAREST: {
+                int source = checkVertex(request.readInt());
+                int k = request.readInt();
+                if (k < 0) {
+                    throw new IllegalArgumentException("k must not be negative, was " + k);
+                }
+                int[] shortestPaths = deltaStepping.calculateShortestPaths(source);
+                int[] nearest = nearest(shortestPaths, source, k);
+                result.writeInt(nearest.length);
+                for (int vertex : nearest) {
+                    result.writeInt(vertex);
+                    result.writeInt(shortestPaths[vertex]);
+                }
+                break;
+            }
+            case STATS: {
+                result.writeInt(histograms.size());
+                for (Map.Entry<Byte, LatencyHistogram> entry : histograms.entrySet()) {
+                    result.writeUTF(endpointNames.get(entry.getKey()));
+                    long[] counts = entry.getValue().getCounts();
+                    result.writeInt(counts.length);
+                    for (long count : counts) {
+                        result.writeLong(count);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * Finds the k vertices closest to a source, not counting the source itself or
+     * unreachable vertices
+     * @param shortestPaths shortest path lengths from the source
+     * @param k number of vertices wanted, capped at the number of vertices in the graph
+     * @return the vertices, closest first
+     */
+    private static int[] nearest(int[] shortestPaths, int source, int k) {
+        /* k comes straight from the client, and the heap below is sized by it */
+        k = Math.min(k, shortestPaths.length - 1);
+        /* max heap on length holding the k closest vertices seen so far */
+        PriorityQueue<Integer> closest = new PriorityQueue<>(Math.max(1, k),
+                (a, b) -> Integer.compare(shortestPaths[b], shortestPaths[a]));
+        for (int v = 1; v < shortestPaths.length; v++) {
+            if (v == source || shortestPaths[v] == Integer.MAX_VALUE || k == 0) {
+                continue;
+            }
+            if (closest.size() < k) {
+                closest.add(v);
+            } else if (shortestPaths[v] < shortestPaths[closest.peek()]) {
+                closest.poll();
+                closest.add(v);
+            }
+        }
+        int[] nearest = new int[closest.size()];
+        for (int i = nearest.length - 1; i >= 0; i--) {
+            nearest[i] = closest.poll();
+        }
+        return nearest;
+    }
+
+    private int checkVertex(int vertex) {
+        if (vertex < 1 || vertex > graph.getNumVertices()) {
+            throw new IllegalArgumentException("No vertex " + vertex);
+        }
+        return vertex;
+    }
+
+    /**
+     * Loads a graph file, reweights it and serves queries until the process is killed.
+     * "-storage offheap" keeps the graph in direct memory, which is capped by
+     * -XX:MaxDirectMemorySize (defaults to the maximum heap size), so raise that for big graphs.
+     * Usage: QueryServer graph_file port [-delta <width|auto>] [-threads <count>] [-storage offheap]
+     *        [-landmarks <count>] [-landmarkSelection <farthest|avoid>]
+     */
+    public static void main(String[] args) throws IOException {
+        String filePath = args[0];
+        int port = Integer.parseInt(args[1]);
+        String deltaOption = "auto";
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        IntArrayAllocator allocator = IntArrayAllocator.heap();
+        int numLandmarks = 0;
+        AltIndex.LandmarkSelection selection = AltIndex.LandmarkSelection.FARTHEST;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-delta")) {
+                deltaOption = args[i + 1];
+            } else if (args[i].equals("-threads")) {
+                numThreads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-storage") && args[i + 1].equals("offheap")) {
+                allocator = IntArrayAllocator.offHeap();
+            } else if (args[i].equals("-landmarks")) {
+                numLandmarks = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-landmarkSelection")) {
+                selection = AltIndex.LandmarkSelection.valueOf(args[i + 1].toUpperCase());
+            }
+        }
+
+        CsrGraph graph = CsrGraph.fromFile(filePath, allocator);
+        if (!BellmanFord.reweight(graph, allocator)) {
+            System.out.printf("Negative cycle detected in file %s. Not serving it\n", filePath);
+            graph.free();
+            return;
+        }
+        int delta = deltaOption.equals("auto") ? DeltaStepping.defaultDelta(graph) : Integer.parseInt(deltaOption);
+        QueryServer server = new QueryServer(graph, delta, numThreads, numLandmarks, selection);
+        server.start(port);
+        System.out.printf("Serving %s on port %d\n", filePath, server.getPort());
+
+        /* print the latency percentiles once a minute */
+        while (true) {
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            for (Map.Entry<String, LatencyHistogram> entry : server.getHistograms().entrySet()) {
+                long[] counts = entry.getValue().getCounts();
+                System.out.printf("%s: count %d, p50 < %dus, p99 < %dus\n", entry.getKey(),
+                        entry.getValue().getCount(), LatencyHistogram.percentileMicros(counts, 0.5),
+                        LatencyHistogram.percentileMicros(counts, 0.99));
+            }
+        }
+        server.close();
+        graph.free();
+    }
+}
@@ -0,0 +1,81 @@
+package main.java;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hands out the scratch state of a shortest path run, such as its numVertices sized arrays,
+ * and takes it back once the run is over. At most maxSize scratch objects are ever created,
+ * when all of them are in use callers wait until one is released. Unlike a ThreadLocal this
+ * keeps memory bounded however many threads call in, and short lived threads still reuse
+ * the scratch of earlier runs
+ */
+class ScratchPool<T> {
+    private int maxSize;
+    private Supplier<T> factory;
+    /* released scratch, most recently used first */
+    private ArrayDeque<T> idle = new ArrayDeque<>();
+    private int numCreated;
+
+    /**
+     * @param maxSize most scratch objects that exist at once, at least 1
+     * @param factory creates a scratch object when none is idle
+     */
+    ScratchPool(int maxSize, Supplier<T> factory) {
+        this.maxSize = Math.max(1, maxSize);
+        this.factory = factory;
+    }
+
+    /**
+     * Takes an idle scratch object, creating one if fewer than maxSize exist and waiting
+     * for a release otherwise. Every acquire must be paired with a release
+     * @return scratch for the caller's exclusive use
+     */
+    T acquire() {
+        synchronized (this) {
+            while (idle.isEmpty() && numCreated >= maxSize) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for scratch", e);
+                }
+            }
+            if (!idle.isEmpty()) {
+                return idle.pop();
+            }
+            numCreated++;
+        }
+        /* allocating can take a while, don't hold up releases meanwhile */
+        try {
+            return factory.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                numCreated--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gives scratch back for the next run
+     */
+    synchronized void release(T scratch) {
+        idle.push(scratch);
+        notify();
+    }
+
+    /**
+     * Hands every idle scratch object to freer and forgets it, for use once no run is in
+     * progress. Later acquires create new scratch
+     * @param freer releases the memory held by a scratch object
+     */
+    synchronized void clear(Consumer<T> freer) {
+        while (!idle.isEmpty()) {
+            freer.accept(idle.pop());
+            numCreated--;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.AltIndex;
+import main.java.BellmanFord;
+import main.java.CsrGraph;
+import main.java.DeltaStepping;
+import main.java.Edge;
+import main.java.HeapDijkstra;
+import main.java.IntArrayAllocator;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class AltIndexTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests if A* with farthest landmarks agrees with HeapDijkstra on every pair of
+     * bellmanford/test2.txt, which has negative edges
+     */
+    @Test
+    void testMatchesHeapDijkstraFarthest() {
+        assertMatchesHeapDijkstra(AltIndex.LandmarkSelection.FARTHEST);
+    }
+
+    /**
+     * Tests if A* with avoid landmarks agrees with HeapDijkstra on every pair of bellmanford/test2.txt
+     */
+    @Test
+    void testMatchesHeapDijkstraAvoid() {
+        assertMatchesHeapDijkstra(AltIndex.LandmarkSelection.AVOID);
+    }
+
+    /**
+     * Tests if landmarks cut down the number of settled vertices on a grid, without changing
+     * any of the lengths
+     */
+    @Test
+    void testFewerSettledVertices() {
+        CsrGraph graph = grid(60);
+        int delta = DeltaStepping.defaultDelta(graph);
+        AltIndex dijkstra = AltIndex.build(graph, 0, AltIndex.LandmarkSelection.FARTHEST, delta, executor, 2);
+        AltIndex farthest = AltIndex.build(graph, 8, AltIndex.LandmarkSelection.FARTHEST, delta, executor, 2);
+        AltIndex avoid = AltIndex.build(graph, 8, AltIndex.LandmarkSelection.AVOID, delta, executor, 2);
+
+        Random random = new Random(7);
+        long dijkstraSettled = 0;
+        long farthestSettled = 0;
+        long avoidSettled = 0;
+        for (int i = 0; i < 50; i++) {
+            int source = 1 + random.nextInt(graph.getNumVertices());
+            int target = 1 + random.nextInt(graph.getNumVertices());
+            AltIndex.Result expected = dijkstra.query(source, target);
+            AltIndex.Result farthestResult = farthest.query(source, target);
+            AltIndex.Result avoidResult = avoid.query(source, target);
+            assertEquals(farthestResult.getLength(), expected.getLength());
+            assertEquals(avoidResult.getLength(), expected.getLength());
+            dijkstraSettled += expected.getSettledVertices();
+            farthestSettled += farthestResult.getSettledVertices();
+            avoidSettled += avoidResult.getSettledVertices();
+        }
+        assertTrue(farthestSettled * 4 < dijkstraSettled, farthestSettled + " vs " + dijkstraSettled);
+        assertTrue(avoidSettled * 4 < dijkstraSettled, avoidSettled + " vs " + dijkstraSettled);
+    }
+
+    /**
+     * Tests if 16 landmarks settle at least ten times fewer vertices than plain Dijkstra on a
+     * random graph, with either selection and without changing any of the lengths
+     */
+    @Test
+    void testTenfoldFewerSettledVerticesRandom() {
+        CsrGraph graph = randomGraph(5000);
+        int delta = DeltaStepping.defaultDelta(graph);
+        AltIndex dijkstra = AltIndex.build(graph, 0, AltIndex.LandmarkSelection.FARTHEST, delta, executor, 2);
+        for (AltIndex.LandmarkSelection selection : AltIndex.LandmarkSelection.values()) {
+            AltIndex altIndex = AltIndex.build(graph, 16, selection, delta, executor, 2);
+            Random random = new Random(7);
+            long dijkstraSettled = 0;
+            long altSettled = 0;
+            for (int i = 0; i < 50; i++) {
+                int source = 1 + random.nextInt(graph.getNumVertices());
+                int target = 1 + random.nextInt(graph.getNumVertices());
+                AltIndex.Result expected = dijkstra.query(source, target);
+                AltIndex.Result result = altIndex.query(source, target);
+                assertEquals(result.getLength(), expected.getLength());
+                dijkstraSettled += expected.getSettledVertices();
+                altSettled += result.getSettledVertices();
+            }
+            assertTrue(altSettled * 10 <= dijkstraSettled, selection + ": " + altSettled + " vs " + dijkstraSettled);
+        }
+    }
+
+    /**
+     * Tests if queries from several threads against an index with mapped arrays each get
+     * their own scratch, by comparing them with the same index on the heap
+     */
+    @Test
+    void testConcurrentQueriesMapped() throws Exception {
+        CsrGraph graph = grid(40);
+        int delta = DeltaStepping.defaultDelta(graph);
+        AltIndex heapIndex = AltIndex.build(graph, 4, AltIndex.LandmarkSelection.FARTHEST, delta, executor, 2);
+        File indexDir = Files.createTempDirectory("alt-index-test").toFile();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            AltIndex mappedIndex = AltIndex.build(graph, 4, AltIndex.LandmarkSelection.FARTHEST, delta, executor, 2,
+                    IntArrayAllocator.mapped(indexDir), 4);
+            Random random = new Random(11);
+            int[][] queries = new int[200][2];
+            List<Future<Integer>> lengths = new ArrayList<>();
+            for (int[] query : queries) {
+                query[0] = 1 + random.nextInt(graph.getNumVertices());
+                query[1] = 1 + random.nextInt(graph.getNumVertices());
+                lengths.add(callers.submit(() -> mappedIndex.calculateShortestPath(query[0], query[1])));
+            }
+            for (int i = 0; i < queries.length; i++) {
+                assertEquals((int) lengths.get(i).get(), heapIndex.calculateShortestPath(queries[i][0], queries[i][1]));
+            }
+        } finally {
+            callers.shutdownNow();
+            Files.walk(indexDir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    private void assertMatchesHeapDijkstra(AltIndex.LandmarkSelection selection) {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+        AltIndex altIndex = AltIndex.build(graph, 2, selection, 1, executor, 2);
+        assertEquals(altIndex.getLandmarks().length, 2);
+
+        for (int source = 1; source <= graph.getNumVertices(); source++) {
+            bmFord = initializeBMFord(filePath);
+            HeapDijkstra dijkstra = new HeapDijkstra(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                    bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+            int[] expected = dijkstra.calculateShortestPaths(source);
+            for (int target = 1; target <= graph.getNumVertices(); target++) {
+                assertEquals(altIndex.calculateShortestPath(source, target), expected[target]);
+            }
+        }
+    }
+
+    /**
+     * Builds a side x side grid with edges both ways between neighbours and random costs
+     */
+    private CsrGraph grid(int side) {
+        Random random = new Random(42);
+        Map<Integer, List<Integer>> edgeMappings = new HashMap<>();
+        Map<Edge, Integer> edgeCosts = new HashMap<>();
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int vertex = row * side + col + 1;
+                List<Integer> heads = new ArrayList<>();
+                if (col + 1 < side) {
+                    heads.add(vertex + 1);
+                }
+                if (col > 0) {
+                    heads.add(vertex - 1);
+                }
+                if (row + 1 < side) {
+                    heads.add(vertex + side);
+                }
+                if (row > 0) {
+                    heads.add(vertex - side);
+                }
+                for (Integer head : heads) {
+                    edgeCosts.put(new Edge(vertex, head), 1 + random.nextInt(10));
+                }
+                edgeMappings.put(vertex, heads);
+            }
+        }
+        return CsrGraph.fromMappings(edgeMappings, edgeCosts, null, side * side);
+    }
+
+    /**
+     * Builds a strongly connected graph with a cycle through every vertex plus up to 4 random
+     * outbound edges per vertex, with costs 0 to 99
+     */
+    private CsrGraph randomGraph(int numVertices) {
+        Random random = new Random(42);
+        Map<Integer, List<Integer>> edgeMappings = new HashMap<>();
+        Map<Edge, Integer> edgeCosts = new HashMap<>();
+        for (int v = 1; v <= numVertices; v++) {
+            List<Integer> heads = new ArrayList<>();
+            heads.add(v % numVertices + 1);
+            edgeCosts.put(new Edge(v, v % numVertices + 1), random.nextInt(100));
+            for (int i = 0; i < 4; i++) {
+                int head = 1 + random.nextInt(numVertices);
+                if (edgeCosts.putIfAbsent(new Edge(v, head), random.nextInt(100)) == null) {
+                    heads.add(head);
+                }
+            }
+            edgeMappings.put(v, heads);
+        }
+        return CsrGraph.fromMappings(edgeMappings, edgeCosts, null, numVertices);
+    }
+
+    private BellmanFord initializeBMFord(String filePath) {
+        BellmanFord bmFord = null;
+        try {
+            bmFord = new BellmanFord(filePath, true);
+        } catch (FileNotFoundException e) {
+            fail("File not found...");
+        }
+        assertTrue(bmFord.calculateShortestPaths(0));
+        return bmFord;
+    }
+}
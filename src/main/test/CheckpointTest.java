@@ -0,0 +1,105 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.Checkpoint;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+class CheckpointTest {
+    private File checkpointDir;
+    private File checkpointFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        checkpointDir = Files.createTempDirectory("checkpoint-test").toFile();
+        checkpointFile = new File(checkpointDir, "johnson.checkpoint");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(checkpointDir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Tests if finished sources and the shortest shortest survive closing and reopening
+     */
+    @Test
+    void testResume() throws IOException {
+        Checkpoint checkpoint = Checkpoint.open(checkpointFile, 60000);
+        checkpoint.complete("g1.txt", 1, 5);
+        checkpoint.complete("g1.txt", 3, -2);
+        checkpoint.completeGraph("g2.txt", Integer.MAX_VALUE);
+        checkpoint.close();
+
+        Checkpoint resumed = Checkpoint.open(checkpointFile, 60000);
+        assertTrue(resumed.isDone("g1.txt", 1));
+        assertFalse(resumed.isDone("g1.txt", 2));
+        assertTrue(resumed.isDone("g1.txt", 3));
+        assertFalse(resumed.isGraphDone("g1.txt"));
+        assertTrue(resumed.isGraphDone("g2.txt"));
+        assertTrue(resumed.isDone("g2.txt", 7));
+        assertFalse(resumed.isDone("g3.txt", 1));
+        assertEquals(resumed.getShortestShortest(), -2);
+        resumed.close();
+    }
+
+    /**
+     * Tests if progress is written in the background without closing the checkpoint
+     */
+    @Test
+    void testPeriodicWrite() throws IOException, InterruptedException {
+        Checkpoint checkpoint = Checkpoint.open(checkpointFile, 10);
+        checkpoint.complete("g3.txt", 42, -19);
+        for (int i = 0; i < 200 && !checkpointFile.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(checkpointFile.exists());
+
+        Checkpoint copy = Checkpoint.open(checkpointFile, 60000);
+        assertTrue(copy.isDone("g3.txt", 42));
+        assertEquals(copy.getShortestShortest(), -19);
+        copy.close();
+        checkpoint.close();
+    }
+
+    /**
+     * Tests if the progress of a graph file whose contents changed is thrown away, while
+     * other graphs keep theirs
+     */
+    @Test
+    void testGraphChanged() throws IOException {
+        File graphFile = new File(checkpointDir, "g1.txt");
+        Files.write(graphFile.toPath(), "2 1\n1 2 -7\n".getBytes());
+        Checkpoint checkpoint = Checkpoint.open(checkpointFile, 60000);
+        assertFalse(checkpoint.startGraph("g1.txt", Checkpoint.fingerprint(graphFile)));
+        checkpoint.complete("g1.txt", 1, -7);
+        assertFalse(checkpoint.startGraph("g2.txt", 99));
+        checkpoint.completeGraph("g2.txt", -3);
+        checkpoint.close();
+
+        Files.write(graphFile.toPath(), "2 1\n1 2 -8\n".getBytes());
+        Checkpoint resumed = Checkpoint.open(checkpointFile, 60000);
+        assertTrue(resumed.startGraph("g1.txt", Checkpoint.fingerprint(graphFile)));
+        assertFalse(resumed.isDone("g1.txt", 1));
+        assertFalse(resumed.startGraph("g2.txt", 99));
+        assertTrue(resumed.isGraphDone("g2.txt"));
+        assertEquals(resumed.getShortestShortest(), -3);
+        resumed.close();
+    }
+
+    /**
+     * Tests if a file that isn't a checkpoint is rejected instead of being treated as progress
+     */
+    @Test
+    void testNotACheckpoint() throws IOException {
+        Files.write(checkpointFile.toPath(), "1000 47978".getBytes());
+        assertThrows(IOException.class, () -> Checkpoint.open(checkpointFile, 60000));
+    }
+}
@@ -0,0 +1,170 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.BellmanFord;
+import main.java.CsrGraph;
+import main.java.DeltaStepping;
+import main.java.IntArray;
+import main.java.IntArrayAllocator;
+import main.java.OffHeapIntArray;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class CsrGraphTest {
+    private File mappedDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mappedDir = Files.createTempDirectory("csr-test").toFile();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(mappedDir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Tests if a graph read straight from dijkstra/test1.txt has the right edges
+     */
+    @Test
+    void testFromFile() throws IOException {
+        CsrGraph graph = CsrGraph.fromFile(System.getProperty("user.dir")
+                + "/src/main/test/testinput/dijkstra/test1.txt", IntArrayAllocator.offHeap());
+        assertEquals(graph.getNumVertices(), 4);
+        assertEquals(graph.getNumEdges(), 6);
+        assertEquals(graph.edgesEnd(1) - graph.edgesBegin(1), 1);
+        assertEquals(graph.edgesEnd(2) - graph.edgesBegin(2), 2);
+        assertEquals(graph.edgesEnd(3) - graph.edgesBegin(3), 1);
+        assertEquals(graph.edgesEnd(4) - graph.edgesBegin(4), 2);
+        assertEquals(graph.getHead(graph.edgesBegin(1)), 2);
+        assertEquals(graph.getCost(graph.edgesBegin(1)), 1);
+    }
+
+    /**
+     * Tests if reweighting a graph kept off the heap finds the same weights as BellmanFord,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testReweightOffHeap() throws IOException {
+        assertReweightMatchesBellmanFord(IntArrayAllocator.offHeap());
+    }
+
+    /**
+     * Tests if reweighting a graph in memory mapped files finds the same weights as BellmanFord,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testReweightMapped() throws IOException {
+        assertReweightMatchesBellmanFord(IntArrayAllocator.mapped(mappedDir));
+        assertTrue(new File(mappedDir, "heads.bin").exists());
+    }
+
+    /**
+     * Tests if reweighting recognizes the presence of a negative cycle in the input graph
+     */
+    @Test
+    void testReweightNegativeCycle() throws IOException {
+        CsrGraph graph = CsrGraph.fromFile(System.getProperty("user.dir")
+                + "/src/main/test/testinput/bellmanford/negativecycle.txt", IntArrayAllocator.offHeap());
+        assertFalse(BellmanFord.reweight(graph, IntArrayAllocator.offHeap()));
+    }
+
+    /**
+     * Tests if an off heap graph round trips through a snapshot and gives the same shortest paths
+     * with off heap scratch, using bellmanford/test1.txt
+     */
+    @Test
+    void testSnapshotOffHeap() throws IOException {
+        CsrGraph graph = CsrGraph.fromFile(System.getProperty("user.dir")
+                + "/src/main/test/testinput/bellmanford/test1.txt", IntArrayAllocator.offHeap());
+        assertTrue(BellmanFord.reweight(graph, IntArrayAllocator.offHeap()));
+        File snapshot = new File(mappedDir, "graph.snapshot");
+        graph.write(snapshot);
+        CsrGraph loaded = CsrGraph.read(snapshot, IntArrayAllocator.mapped(mappedDir));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DeltaStepping original = new DeltaStepping(graph, 1, executor, 2, IntArrayAllocator.offHeap());
+            DeltaStepping reloaded = new DeltaStepping(loaded, 1, executor, 2, IntArrayAllocator.offHeap());
+            for (int source = 1; source <= graph.getNumVertices(); source++) {
+                assertArrayEquals(original.calculateShortestPaths(source), reloaded.calculateShortestPaths(source));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests compare-and-set on off heap memory
+     */
+    @Test
+    void testOffHeapCompareAndSet() {
+        IntArray array = OffHeapIntArray.allocate(8);
+        array.fill(Integer.MAX_VALUE);
+        assertTrue(array.compareAndSet(5, Integer.MAX_VALUE, 3));
+        assertFalse(array.compareAndSet(5, Integer.MAX_VALUE, 2));
+        assertEquals(array.getVolatile(5), 3);
+        assertEquals(array.get(4), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tests if freeing an off heap array gives its direct memory back without waiting on a GC
+     */
+    @Test
+    void testFreeDirectMemory() {
+        BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct")).findFirst().get();
+        long before = direct.getMemoryUsed();
+        IntArray array = OffHeapIntArray.allocate(1 << 20);
+        assertTrue(direct.getMemoryUsed() >= before + (4 << 20));
+        array.free();
+        assertTrue(direct.getMemoryUsed() < before + (4 << 20));
+        assertThrows(NullPointerException.class, () -> array.get(0));
+    }
+
+    /**
+     * Tests if a freed mapped array leaves its contents in the file
+     */
+    @Test
+    void testFreeMapped() throws IOException {
+        File file = new File(mappedDir, "freed.bin");
+        IntArray array = OffHeapIntArray.map(file, 16);
+        array.set(7, 42);
+        array.free();
+        assertEquals(OffHeapIntArray.map(file, 16).get(7), 42);
+    }
+
+    private void assertReweightMatchesBellmanFord(IntArrayAllocator allocator) throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        CsrGraph graph = CsrGraph.fromFile(filePath, allocator);
+        assertTrue(BellmanFord.reweight(graph, allocator));
+
+        BellmanFord bmFord = null;
+        try {
+            bmFord = new BellmanFord(filePath, true);
+        } catch (FileNotFoundException e) {
+            fail("File not found...");
+        }
+        assertTrue(bmFord.calculateShortestPaths(0));
+        Map<Integer, Integer> johnsonWeights = bmFord.getShortestPathLengths();
+        for (int v = 1; v <= graph.getNumVertices(); v++) {
+            assertEquals(graph.getPotential(v), (int) johnsonWeights.get(v));
+        }
+        for (int edge = 0; edge < graph.getNumEdges(); edge++) {
+            assertTrue(graph.getCost(edge) >= 0);
+        }
+    }
+}
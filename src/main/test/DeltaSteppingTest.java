@@ -0,0 +1,204 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.BellmanFord;
+import main.java.CsrGraph;
+import main.java.DeltaStepping;
+import main.java.Edge;
+import main.java.HeapDijkstra;
+import main.java.IntArrayAllocator;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+class DeltaSteppingTest {
+    private ExecutorService executor;
+    private CsrGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests if the correct shortest paths lengths are computed, using
+     * dijkstra/test1.txt for the graph and source = 1
+     */
+    @Test
+    void testShortestPathLengths() {
+        initializeGraph(System.getProperty("user.dir") + "/src/main/test/testinput/dijkstra/test1.txt");
+        DeltaStepping deltaStepping = new DeltaStepping(graph, 2, executor, 4);
+
+        int[] spLengths = deltaStepping.calculateShortestPaths(1);
+        assertEquals(spLengths[2], 1);
+        assertEquals(spLengths[3], 6);
+        assertEquals(spLengths[4], 12);
+    }
+
+    /**
+     * Tests if the correct shortest paths lengths are computed, using
+     * dijkstra/test2.txt for the graph, source = 5 and a delta that makes every edge light
+     */
+    @Test
+    void testShortestPathLengthsAllLight() {
+        initializeGraph(System.getProperty("user.dir") + "/src/main/test/testinput/dijkstra/test2.txt");
+        DeltaStepping deltaStepping = new DeltaStepping(graph, 100, executor, 4);
+
+        int[] spLengths = deltaStepping.calculateShortestPaths(5);
+        assertEquals(spLengths[1], 50);
+        assertEquals(spLengths[2], 19);
+        assertEquals(spLengths[3], 30);
+        assertEquals(spLengths[4], 10);
+    }
+
+    /**
+     * Tests if the point query agrees with the full computation, using dijkstra/test3.txt
+     */
+    @Test
+    void testPointQuery() {
+        initializeGraph(System.getProperty("user.dir") + "/src/main/test/testinput/dijkstra/test3.txt");
+        DeltaStepping deltaStepping = new DeltaStepping(graph, 1, executor, 4);
+
+        assertEquals(deltaStepping.calculateShortestPath(1, 3), 4);
+        assertEquals(deltaStepping.calculateShortestPath(1, 4), 5);
+    }
+
+    /**
+     * Tests if delta-stepping matches HeapDijkstra on a graph with negative edges,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testMatchesHeapDijkstra() {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        initializeGraph(filePath);
+        DeltaStepping deltaStepping
+                = new DeltaStepping(graph, DeltaStepping.defaultDelta(graph), executor, 4);
+
+        for (int source = 1; source <= graph.getNumVertices(); source++) {
+            BellmanFord bmFord = initializeBMFord(filePath);
+            HeapDijkstra dijkstra = new HeapDijkstra(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                    bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+            assertArrayEquals(dijkstra.calculateShortestPaths(source),
+                    deltaStepping.calculateShortestPaths(source));
+        }
+    }
+
+    /**
+     * Tests if full rows and point queries match HeapDijkstra on a generated graph whose
+     * frontiers are big enough to be split across the pool
+     */
+    @Test
+    void testMatchesHeapDijkstraParallel() {
+        int numVertices = 2000;
+        Map<Integer, List<Integer>> edgeMappings = new HashMap<>();
+        Map<Edge, Integer> edgeCosts = new HashMap<>();
+        Map<Integer, Integer> johnsonWeights = new HashMap<>();
+        generateGraph(numVertices, edgeMappings, edgeCosts, johnsonWeights);
+
+        /* a delta wider than every cost keeps all vertices in one bucket, so frontiers grow to thousands */
+        for (int delta : new int[]{DeltaStepping.defaultDelta(graph), 1000}) {
+            DeltaStepping deltaStepping = new DeltaStepping(graph, delta, executor, 4);
+            for (int source = 1; source <= 3; source++) {
+                HeapDijkstra dijkstra = new HeapDijkstra(edgeMappings, edgeCosts, johnsonWeights, numVertices);
+                int[] expected = dijkstra.calculateShortestPaths(source);
+                assertArrayEquals(expected, deltaStepping.calculateShortestPaths(source));
+                for (int target = 1; target <= numVertices; target += 97) {
+                    assertEquals(deltaStepping.calculateShortestPath(source, target), expected[target]);
+                }
+            }
+        }
+        assertTrue(((ThreadPoolExecutor) executor).getTaskCount() > 0);
+    }
+
+    /**
+     * Tests if several threads calling into one DeltaStepping with mapped scratch arrays
+     * each get their own distances
+     */
+    @Test
+    void testConcurrentCallersMapped() throws Exception {
+        int numVertices = 20000;
+        generateGraph(numVertices, new HashMap<>(), new HashMap<>(), new HashMap<>());
+        DeltaStepping heapDeltaStepping = new DeltaStepping(graph, DeltaStepping.defaultDelta(graph), executor, 4);
+        File scratchDir = Files.createTempDirectory("delta-stepping-test").toFile();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            DeltaStepping mappedDeltaStepping = new DeltaStepping(graph, DeltaStepping.defaultDelta(graph),
+                    executor, 4, IntArrayAllocator.mapped(scratchDir), 4);
+            List<Future<int[]>> rows = new ArrayList<>();
+            for (int source = 1; source <= 16; source++) {
+                int from = source;
+                rows.add(callers.submit(() -> mappedDeltaStepping.calculateShortestPaths(from)));
+            }
+            for (int source = 1; source <= 16; source++) {
+                assertArrayEquals(heapDeltaStepping.calculateShortestPaths(source), rows.get(source - 1).get());
+            }
+        } finally {
+            callers.shutdownNow();
+            Files.walk(scratchDir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /**
+     * Generates a strongly connected graph with costs 0 to 99 into the maps and graph
+     */
+    private void generateGraph(int numVertices, Map<Integer, List<Integer>> edgeMappings,
+                               Map<Edge, Integer> edgeCosts, Map<Integer, Integer> johnsonWeights) {
+        Random random = new Random(42);
+        for (int v = 1; v <= numVertices; v++) {
+            List<Integer> heads = new ArrayList<>();
+            /* a cycle through every vertex keeps the graph strongly connected */
+            heads.add(v % numVertices + 1);
+            edgeCosts.put(new Edge(v, v % numVertices + 1), random.nextInt(100));
+            for (int i = 0; i < 4; i++) {
+                int head = 1 + random.nextInt(numVertices);
+                if (edgeCosts.putIfAbsent(new Edge(v, head), random.nextInt(100)) == null) {
+                    heads.add(head);
+                }
+            }
+            edgeMappings.put(v, heads);
+            johnsonWeights.put(v, 0);
+        }
+        graph = CsrGraph.fromMappings(edgeMappings, edgeCosts, johnsonWeights, numVertices);
+    }
+
+    /**
+     * Initializes a reweighted CsrGraph using Bellman-Ford on an input graph file
+     * @param filePath the path to the input graph file
+     */
+    private void initializeGraph(String filePath) {
+        BellmanFord bmFord = initializeBMFord(filePath);
+        graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+    }
+
+    private BellmanFord initializeBMFord(String filePath) {
+        BellmanFord bmFord = null;
+        try {
+            bmFord = new BellmanFord(filePath, true);
+        } catch (FileNotFoundException e) {
+            fail("File not found...");
+        }
+        assertTrue(bmFord.calculateShortestPaths(0));
+        return bmFord;
+    }
+}
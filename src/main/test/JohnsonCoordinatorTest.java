@@ -0,0 +1,252 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.BellmanFord;
+import main.java.Checkpoint;
+import main.java.CsrGraph;
+import main.java.HeapDijkstra;
+import main.java.JohnsonCoordinator;
+import main.java.JohnsonWorker;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+class JohnsonCoordinatorTest {
+    private File workDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workDir = Files.createTempDirectory("johnson-test").toFile();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(workDir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Tests if several worker JVMs with one source per range agree with HeapDijkstra,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testMatchesHeapDijkstra() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+
+        JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 3, 1, "auto", 1);
+        assertEquals(coordinator.calculateShortestShortest(), heapDijkstraShortestShortest(filePath));
+        assertEquals(new File(workDir, "results").list().length, graph.getNumVertices());
+    }
+
+    /**
+     * Tests if workers that keep their graph in mapped files agree with HeapDijkstra,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testMappedWorkers() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+
+        JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 2, 2, "auto", 1, "mapped");
+        assertEquals(coordinator.calculateShortestShortest(), heapDijkstraShortestShortest(filePath));
+        File[] storageDirs = workDir.listFiles((dir, name) -> name.startsWith("storage-"));
+        assertTrue(storageDirs.length > 0);
+        assertTrue(new File(storageDirs[0], "heads.bin").exists());
+    }
+
+    /**
+     * Tests if a work directory left behind by a killed run is reused: finished ranges keep
+     * their result and leftover tasks are recreated, using bellmanford/test2.txt
+     */
+    @Test
+    void testResumesFromResults() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+        File snapshot = new File(workDir, "graph.snapshot");
+        graph.write(snapshot);
+        Files.write(new File(workDir, "run.info").toPath(), (Checkpoint.fingerprint(snapshot) + " 1").getBytes());
+        Path pendingDir = Files.createDirectories(new File(workDir, "pending").toPath());
+        Path claimedDir = Files.createDirectories(new File(workDir, "claimed").toPath());
+        Path resultsDir = Files.createDirectories(new File(workDir, "results").toPath());
+        /* range 1-1 finished with a made up result, 2-2 was claimed by a worker that got killed */
+        Files.write(resultsDir.resolve("1-1"), "-1000".getBytes());
+        Files.createFile(claimedDir.resolve("2-2.0"));
+        Files.createFile(pendingDir.resolve("3-3"));
+
+        JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 2, 1, "auto", 1);
+        assertEquals(coordinator.calculateShortestShortest(), -1000);
+        assertEquals(resultsDir.toFile().list().length, graph.getNumVertices());
+        assertEquals(claimedDir.toFile().list().length, 0);
+        assertEquals(pendingDir.toFile().list().length, 0);
+        assertEquals(new String(Files.readAllBytes(resultsDir.resolve("1-1"))), "-1000");
+    }
+
+    /**
+     * Tests if results left by a run over another graph, or with another range size, are thrown
+     * away instead of being reused, using bellmanford/test2.txt
+     */
+    @Test
+    void testDiscardsResultsOfOtherRun() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+        File snapshot = new File(workDir, "graph.snapshot");
+        graph.write(snapshot);
+        long fingerprint = Checkpoint.fingerprint(snapshot);
+        Path resultsDir = Files.createDirectories(new File(workDir, "results").toPath());
+
+        for (String runInfo : new String[] {(fingerprint + 1) + " 1", fingerprint + " 2"}) {
+            Files.write(new File(workDir, "run.info").toPath(), runInfo.getBytes());
+            Files.write(resultsDir.resolve("1-1"), "-1000".getBytes());
+            JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 2, 1, "auto", 1);
+            assertEquals(coordinator.calculateShortestShortest(), heapDijkstraShortestShortest(filePath));
+        }
+    }
+
+    /**
+     * Tests if the range claimed by a worker that dies is handed to a replacement worker,
+     * using bellmanford/test2.txt
+     */
+    @Test
+    void testDeadWorkerIsReplaced() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+
+        /* a single worker, so the first one is sure to claim a range before it dies */
+        JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 1, 1, "auto", 1);
+        coordinator.setWorkerMainClass(FirstWorkerDies.class.getName());
+        assertEquals(coordinator.calculateShortestShortest(), heapDijkstraShortestShortest(filePath));
+        assertEquals(new File(workDir, "results").list().length, graph.getNumVertices());
+        assertEquals(new File(workDir, "claimed").list().length, 0);
+        /* the first worker and its one replacement */
+        assertEquals(workDir.list((dir, name) -> name.startsWith("worker-")).length, 2);
+    }
+
+    /**
+     * Tests if a worker whose coordinator is gone exits instead of claiming ranges
+     */
+    @Test
+    void testWorkerExitsWithoutCoordinator() throws IOException, InterruptedException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+        graph.write(new File(workDir, "graph.snapshot"));
+        Path pendingDir = Files.createDirectories(new File(workDir, "pending").toPath());
+        Files.createDirectories(new File(workDir, "claimed").toPath());
+        Files.createDirectories(new File(workDir, "results").toPath());
+        Files.createFile(pendingDir.resolve("1-1"));
+
+        String javaBinary = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process coordinator = new ProcessBuilder(javaBinary, "-version").start();
+        coordinator.waitFor();
+        Process worker = new ProcessBuilder(javaBinary, "-cp", System.getProperty("java.class.path"),
+                JohnsonWorker.class.getName(), workDir.getAbsolutePath(), "orphan-0", "auto", "1", "heap",
+                Long.toString(coordinator.pid())).start();
+        assertTrue(worker.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(worker.exitValue(), 1);
+        assertTrue(Files.exists(pendingDir.resolve("1-1")));
+    }
+
+    /**
+     * Tests if the coordinator gives up once every worker and every allowed replacement has died
+     */
+    @Test
+    void testRestartLimit() throws IOException {
+        String filePath = System.getProperty("user.dir") + "/src/main/test/testinput/bellmanford/test2.txt";
+        BellmanFord bmFord = initializeBMFord(filePath);
+        CsrGraph graph = CsrGraph.fromMappings(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+
+        JohnsonCoordinator coordinator = new JohnsonCoordinator(graph, workDir, 2, 1, "auto", 1);
+        coordinator.setWorkerMainClass(EveryWorkerDies.class.getName());
+        coordinator.setMaxRestarts(3);
+        assertThrows(IllegalStateException.class, coordinator::calculateShortestShortest);
+        /* 2 workers plus 3 replacements */
+        assertEquals(workDir.list((dir, name) -> name.startsWith("worker-")).length, 5);
+        assertEquals(new File(workDir, "results").list().length, 0);
+    }
+
+    /**
+     * Claims a pending range the way JohnsonWorker does, then exits without a result
+     */
+    private static void claimAndDie(String[] args) throws IOException {
+        Path pendingDir = new File(args[0], "pending").toPath();
+        Path claimedDir = new File(args[0], "claimed").toPath();
+        for (String range : pendingDir.toFile().list()) {
+            try {
+                Files.move(pendingDir.resolve(range), claimedDir.resolve(range + "." + args[1]),
+                        StandardCopyOption.ATOMIC_MOVE);
+                break;
+            } catch (NoSuchFileException e) {
+                /* another worker claimed it first */
+            }
+        }
+        System.exit(3);
+    }
+
+    /**
+     * Worker that dies after claiming a range if it is worker 0, and works normally otherwise
+     */
+    public static class FirstWorkerDies {
+        public static void main(String[] args) throws IOException {
+            if (args[1].endsWith("-0")) {
+                claimAndDie(args);
+            }
+            JohnsonWorker.main(args);
+        }
+    }
+
+    /**
+     * Worker that always dies after claiming a range
+     */
+    public static class EveryWorkerDies {
+        public static void main(String[] args) throws IOException {
+            claimAndDie(args);
+        }
+    }
+
+    private int heapDijkstraShortestShortest(String filePath) {
+        int shortestShortest = Integer.MAX_VALUE;
+        BellmanFord bmFord = initializeBMFord(filePath);
+        for (int source = 1; source <= bmFord.getNumVertices(); source++) {
+            bmFord = initializeBMFord(filePath);
+            HeapDijkstra dijkstra = new HeapDijkstra(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                    bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+            for (int shortestPath : dijkstra.calculateShortestPaths(source)) {
+                shortestShortest = Math.min(shortestShortest, shortestPath);
+            }
+        }
+        return shortestShortest;
+    }
+
+    private BellmanFord initializeBMFord(String filePath) {
+        BellmanFord bmFord = null;
+        try {
+            bmFord = new BellmanFord(filePath, true);
+        } catch (FileNotFoundException e) {
+            fail("File not found...");
+        }
+        assertTrue(bmFord.calculateShortestPaths(0));
+        return bmFord;
+    }
+}
@@ -0,0 +1,194 @@
+package main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import main.java.BellmanFord;
+import main.java.CsrGraph;
+import main.java.HeapDijkstra;
+import main.java.IntArrayAllocator;
+import main.java.QueryClient;
+import main.java.QueryServer;
+import org.junit.jupiter.api.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class QueryServerTest {
+    private static final String GRAPH_FILE = "/src/main/test/testinput/bellmanford/test2.txt";
+
+    private QueryServer server;
+    private QueryClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        IntArrayAllocator allocator = IntArrayAllocator.heap();
+        CsrGraph graph = CsrGraph.fromFile(System.getProperty("user.dir") + GRAPH_FILE, allocator);
+        assertTrue(BellmanFord.reweight(graph, allocator));
+        server = new QueryServer(graph, 3, 2);
+        server.start(0);
+        client = new QueryClient("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    /**
+     * Tests if rows and point queries agree with HeapDijkstra for every source
+     */
+    @Test
+    void testMatchesHeapDijkstra() throws IOException {
+        for (int source = 1; source <= 5; source++) {
+            int[] expected = heapDijkstraRow(source);
+            assertArrayEquals(client.row(source), expected);
+            for (int target = 1; target <= 5; target++) {
+                assertEquals(client.distance(source, target), expected[target]);
+            }
+        }
+    }
+
+    /**
+     * Tests if pipelined queries on one connection are all answered and matched to the right request
+     */
+    @Test
+    void testPipelinedDistances() throws IOException {
+        int[] sources = new int[100];
+        int[] targets = new int[100];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = 1 + i % 5;
+            targets[i] = 1 + (i / 5) % 5;
+        }
+        int[] lengths = client.distances(sources, targets);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(lengths[i], heapDijkstraRow(sources[i])[targets[i]]);
+        }
+    }
+
+    /**
+     * Tests if a batch of pipelined queries far bigger than the socket buffers completes
+     */
+    @Test
+    void testManyPipelinedDistances() throws Exception {
+        int[] sources = new int[200000];
+        int[] targets = new int[200000];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = 1 + i % 5;
+            targets[i] = 1 + (i / 5) % 5;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int[] lengths = executor.submit(() -> client.distances(sources, targets)).get(60, TimeUnit.SECONDS);
+            for (int i = 0; i < sources.length; i += 997) {
+                assertEquals(lengths[i], heapDijkstraRow(sources[i])[targets[i]]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests if a client that pipelines requests without ever reading the responses, until the
+     * socket buffers are full both ways, doesn't stop other connections from being answered
+     */
+    @Test
+    void testClientThatDoesNotRead() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Socket stalled = new Socket("localhost", server.getPort())) {
+            AtomicInteger numSent = new AtomicInteger();
+            executor.execute(() -> {
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stalled.getOutputStream()));
+                    for (int i = 0; i < 2000000; i++) {
+                        out.writeInt(13);
+                        out.writeInt(i);
+                        out.writeByte(1);
+                        out.writeInt(1);
+                        out.writeInt(5);
+                        numSent.incrementAndGet();
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    /* the socket was closed at the end of the test */
+                }
+            });
+            /* wait until the sender is stuck on full buffers */
+            int lastSent = -1;
+            while (numSent.get() != lastSent) {
+                lastSent = numSent.get();
+                Thread.sleep(500);
+            }
+            assertTrue(lastSent < 2000000);
+
+            try (QueryClient other = new QueryClient("localhost", server.getPort())) {
+                Future<Integer> distance = executor.submit(() -> other.distance(1, 2));
+                assertEquals((int) distance.get(10, TimeUnit.SECONDS), -3);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests the k nearest query from source 2 of bellmanford/test2.txt
+     */
+    @Test
+    void testNearest() throws IOException {
+        int[][] nearest = client.nearest(2, 2);
+        assertEquals(nearest.length, 2);
+        /* from 2: to 4 is -2, to 3 is 11, to 5 is 8, to 1 is 31 */
+        assertEquals(nearest[0][0], 4);
+        assertEquals(nearest[0][1], -2);
+        assertEquals(nearest[1][0], 5);
+        assertEquals(nearest[1][1], 8);
+        assertEquals(client.nearest(2, 10).length, 4);
+        assertEquals(client.nearest(2, Integer.MAX_VALUE).length, 4);
+    }
+
+    /**
+     * Tests if a bad request is rejected without breaking the connection, and shows up in the stats
+     */
+    @Test
+    void testBadRequestAndStats() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> client.distance(1, 6));
+        assertEquals(client.distance(1, 2), -3);
+        client.row(1);
+
+        Map<String, long[]> stats = client.stats();
+        assertEquals(sum(stats.get("distance")), 2);
+        assertEquals(sum(stats.get("row")), 1);
+        assertEquals(sum(stats.get("nearest")), 0);
+        assertEquals(server.getHistograms().get("distance").getCount(), 2);
+    }
+
+    private long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private int[] heapDijkstraRow(int source) {
+        BellmanFord bmFord = null;
+        try {
+            bmFord = new BellmanFord(System.getProperty("user.dir") + GRAPH_FILE, true);
+        } catch (FileNotFoundException e) {
+            fail("File not found...");
+        }
+        assertTrue(bmFord.calculateShortestPaths(0));
+        HeapDijkstra dijkstra = new HeapDijkstra(bmFord.getEdgeMappings(), bmFord.getEdgeToCost(),
+                bmFord.getShortestPathLengths(), bmFord.getNumVertices());
+        return dijkstra.calculateShortestPaths(source);
+    }
+}